@@ -0,0 +1,306 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.db.mongo;
+
+import com.mongodb.client.result.UpdateResult;
+import me.darksidecode.kantanj.types.Check;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A Cacheable skeleton that keeps the object's data in a field map
+ * and tracks changes made to it automatically.
+ *
+ * Implementations only need to specify the collection and the "id-key"
+ * they are stored under, and expose typed getters and setters delegating
+ * to get(...) and set(...)/unset(...). For example:
+ *
+ *     public String getEmail() { return get("email", String.class); }
+ *     public void setEmail(String email) { set("email", email); }
+ *
+ * NOTE: unlike the base Cacheable contract, push() here returns a complete
+ *       update document with update operators ($set and/or $unset). It must
+ *       be passed to MongoCollection#updateOne as-is, NOT wrapped in $set
+ *       (i.e. not through MongoManager#updateOne). See save(MongoManager).
+ *
+ * Values stored in the field map are compared with equals(...) and should be
+ * treated as immutable. If a value (e.g. a List) is modified in-place, call
+ * markDirty(String) to make sure the change gets pushed.
+ *
+ * This class is not thread-safe.
+ */
+public abstract class AbstractCacheable implements Cacheable {
+
+    /**
+     * Data as it was on the moment of last fetch/creation/push.
+     */
+    private Document original;
+
+    /**
+     * Current (possibly modified) data.
+     */
+    private Document current;
+
+    private final Set<String> dirtyKeys = new LinkedHashSet<>();
+
+    /**
+     * @return name of the collection objects of this type are stored in.
+     */
+    protected abstract String getCollectionName();
+
+    /**
+     * @return name of the key unique for each object of this type ("id-key").
+     */
+    protected abstract String getIdKey();
+
+    @Override
+    public void fetch(MongoManager database, Object uniqueIdentifier) {
+        Check.notNull(database, "database cannot be null");
+        Document doc = database.fetchFirst(getCollectionName(), getIdKey(), uniqueIdentifier);
+
+        if (doc == null)
+            throw new NoSuchElementException(String.format("no entries with \"%s\"=\"%s\" found in %s",
+                    getIdKey(), uniqueIdentifier, getCollectionName()));
+
+        load(doc);
+    }
+
+    /**
+     * Fetch multiple objects at once using a single $in query (or a few of them,
+     * if there are more than MongoManager#IN_QUERY_CHUNK_SIZE identifiers), instead
+     * of calling fetch(MongoManager, Object) for each object separately.
+     *
+     * Identifiers are matched against the "id-key" values of fetched documents
+     * using equals(...), so they must be of the same type as stored in the database
+     * (e.g. Long rather than Integer for int64 values).
+     *
+     * @param factory creates new empty objects of the desired type.
+     * @param uniqueIdentifiers identifiers of objects to fetch.
+     *
+     * @return a list of fetched objects of the same size and in the same order as
+     *         `uniqueIdentifiers`; for identifiers that no entries could be found
+     *         for, the list contains null at the corresponding positions.
+     */
+    public static <T extends AbstractCacheable> List<T> fetchAll(MongoManager database, Supplier<? extends T> factory,
+                                                                 Collection<?> uniqueIdentifiers) {
+        Check.notNull(database, "database cannot be null");
+        Check.notNull(factory, "factory cannot be null");
+        Check.notNull(uniqueIdentifiers, "uniqueIdentifiers cannot be null");
+
+        T prototype = Check.notNull(factory.get(), "factory returned null");
+        String idKey = prototype.getIdKey();
+
+        // Deduplicate, but preserve the order of identifiers.
+        Map<Object, T> fetched = new HashMap<>(uniqueIdentifiers.size() * 4 / 3 + 1);
+        Set<Object> distinctIds = new LinkedHashSet<>(uniqueIdentifiers);
+
+        database.forEachIn(prototype.getCollectionName(), idKey, distinctIds, null, doc -> {
+            T obj = (fetched.isEmpty()) ? prototype : Check.notNull(factory.get(), "factory returned null");
+            obj.load(doc);
+            fetched.put(doc.get(idKey), obj);
+        });
+
+        List<T> result = new ArrayList<>(uniqueIdentifiers.size());
+
+        for (Object id : uniqueIdentifiers)
+            result.add(fetched.get(id));
+
+        return result;
+    }
+
+    /**
+     * Fill this object's fields with data of an existing database entry,
+     * e.g. obtained from a custom query, as if it was fetched using
+     * fetch(MongoManager, Object). The object is considered unchanged after this.
+     */
+    public void load(Document doc) {
+        Check.notNull(doc, "doc cannot be null");
+
+        original = new Document(doc);
+        current = new Document(doc);
+        dirtyKeys.clear();
+    }
+
+    /**
+     * Initialize this object as a new one, not existing in a database yet.
+     * Its data is then inserted using create().
+     */
+    public void initialize(Object uniqueIdentifier) {
+        original = new Document();
+        current = new Document(getIdKey(), uniqueIdentifier);
+        dirtyKeys.clear();
+        dirtyKeys.add(getIdKey());
+    }
+
+    public boolean isInitialized() {
+        return current != null;
+    }
+
+    public Object getUniqueIdentifier() {
+        ensureInitialized();
+        return current.get(getIdKey());
+    }
+
+    @Override
+    public Document create() {
+        ensureInitialized();
+
+        Document data = new Document(current);
+        markClean();
+
+        return data;
+    }
+
+    /**
+     * @return an update document with update operators ($set and/or $unset)
+     *         containing only the fields changed since last fetch/creation/push,
+     *         or null if nothing has changed.
+     */
+    @Override
+    public Document push() {
+        ensureInitialized();
+        Document update = buildUpdate();
+
+        if (update != null)
+            markClean();
+
+        return update;
+    }
+
+    private Document buildUpdate() {
+        if (dirtyKeys.isEmpty())
+            return null;
+
+        Document set = new Document();
+        Document unset = new Document();
+
+        for (String key : dirtyKeys) {
+            if (current.containsKey(key))
+                set.put(key, current.get(key));
+            else
+                unset.put(key, "");
+        }
+
+        Document update = new Document();
+
+        if (!(set.isEmpty()))
+            update.put("$set", set);
+
+        if (!(unset.isEmpty()))
+            update.put("$unset", unset);
+
+        return update;
+    }
+
+    /**
+     * Push changes made to this object (if any) to the specified database.
+     * The entry is looked up by the id as of last fetch/creation/push, so changing
+     * the id itself is supported. If the update fails, the changes are kept and
+     * can be saved again later.
+     *
+     * @return true if there were any changes to push, false otherwise.
+     *
+     * @throws IllegalStateException if this object has not been created in the database yet.
+     * @throws NoSuchElementException if there is no entry with this object's id in the database.
+     */
+    public boolean save(MongoManager database) {
+        Check.notNull(database, "database cannot be null");
+        ensureInitialized();
+
+        if (!(original.containsKey(getIdKey())))
+            throw new IllegalStateException("not created yet");
+
+        Document update = buildUpdate();
+
+        if (update == null)
+            return false;
+
+        Object id = original.get(getIdKey());
+        UpdateResult result = database.getCollection(getCollectionName()).
+                updateOne(new Document(getIdKey(), id), update);
+
+        // The matched count is only known for acknowledged writes.
+        if ((result.wasAcknowledged()) && (result.getMatchedCount() == 0))
+            throw new NoSuchElementException(String.format("no entries with \"%s\"=\"%s\" found in %s",
+                    getIdKey(), id, getCollectionName()));
+
+        markClean();
+        return true;
+    }
+
+    public boolean isDirty() {
+        return !(dirtyKeys.isEmpty());
+    }
+
+    protected <T> T get(String key, Class<T> type) {
+        ensureInitialized();
+        return current.get(Check.notNull(key, "key cannot be null"), type);
+    }
+
+    protected boolean has(String key) {
+        ensureInitialized();
+        return current.containsKey(Check.notNull(key, "key cannot be null"));
+    }
+
+    protected void set(String key, Object value) {
+        ensureInitialized();
+        Check.notNull(key, "key cannot be null");
+        current.put(key, value);
+
+        if ((original.containsKey(key)) && (Objects.equals(original.get(key), value)))
+            dirtyKeys.remove(key); // changed back to the original value
+        else
+            dirtyKeys.add(key);
+    }
+
+    protected void unset(String key) {
+        ensureInitialized();
+        Check.notNull(key, "key cannot be null");
+        current.remove(key);
+
+        if (original.containsKey(key))
+            dirtyKeys.add(key);
+        else
+            dirtyKeys.remove(key); // never existed in the database
+    }
+
+    protected void markDirty(String key) {
+        ensureInitialized();
+        dirtyKeys.add(Check.notNull(key, "key cannot be null"));
+    }
+
+    private void markClean() {
+        original = new Document(current);
+        dirtyKeys.clear();
+    }
+
+    private void ensureInitialized() {
+        if (!(isInitialized()))
+            throw new IllegalStateException("not initialized");
+    }
+
+}
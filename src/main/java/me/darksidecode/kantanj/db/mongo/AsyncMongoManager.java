@@ -0,0 +1,362 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.db.mongo;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import me.darksidecode.kantanj.types.Check;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking counterpart of MongoManager built on top of the MongoDB
+ * Reactive Streams driver. All data operations return immediately with a
+ * CompletableFuture that is completed from the driver's I/O threads, so
+ * no caller thread is parked while waiting for the database.
+ *
+ * State and argument checks are still done synchronously (i.e. the
+ * methods below throw instead of returning a failed future in case
+ * they are called with invalid arguments or in an invalid state).
+ */
+public class AsyncMongoManager implements AutoCloseable {
+
+    private static final int DEFAULT_MONGO_PORT = 27017;
+
+    private MongoClient client;
+    private MongoDatabase selected;
+
+    private MongoPoolOptions poolOptions = MongoPoolOptions.defaults();
+
+    public AsyncMongoManager noLogs() {
+        Logger.getLogger("com.mongodb").setLevel(Level.OFF);
+        Logger.getLogger("org.mongodb").setLevel(Level.OFF);
+
+        return this;
+    }
+
+    /**
+     * @see MongoManager#poolOptions(MongoPoolOptions)
+     */
+    public AsyncMongoManager poolOptions(MongoPoolOptions poolOptions) {
+        Check.state(isConnected(), "pool options must be set before connecting");
+
+        this.poolOptions = Check.notNull(poolOptions, "poolOptions cannot be null");
+        return this;
+    }
+
+    public MongoPoolOptions getPoolOptions() {
+        return poolOptions;
+    }
+
+    public AsyncMongoManager connectLocal() {
+        try {
+            return connect0(new ServerAddress(), null);
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to connect to default local database", ex);
+        }
+    }
+
+    public AsyncMongoManager connectLocal(String username, String database, char[] password) {
+        try {
+            return connect("localhost", DEFAULT_MONGO_PORT, username, database, password);
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to connect to default local database", ex);
+        }
+    }
+
+    public AsyncMongoManager connect(String host) {
+        if ((host == null) || (host.trim().isEmpty()))
+            throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') host");
+
+        try {
+            return connect0(new ServerAddress(host), null);
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to connect " +
+                    "to remote database \"" + host + "\" (default port)", ex);
+        }
+    }
+
+    public AsyncMongoManager connect(String host, int port) {
+        if ((host == null) || (host.trim().isEmpty()))
+            throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') host");
+
+        if ((port < 1) || (port > 65535))
+            throw new IllegalArgumentException("invalid port " + port);
+
+        try {
+            return connect0(new ServerAddress(host, port), null);
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format("failed to " +
+                    "connect to remote database \"%s\" at port %s", host, port), ex);
+        }
+    }
+
+    public AsyncMongoManager connect(String host, int port, String username, String database, char[] password) {
+        if ((host == null) || (host.trim().isEmpty()))
+            throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') host");
+
+        if ((username == null) || (username.trim().isEmpty()))
+            throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') username");
+
+        if ((database == null) || (database.trim().isEmpty()))
+            throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') database");
+
+        if ((password == null) || (password.length == 0))
+            throw new IllegalArgumentException("invalid (null or empty) password");
+
+        if ((port < 1) || (port > 65535))
+            throw new IllegalArgumentException("invalid port " + port);
+
+        try {
+            MongoCredential cred = MongoCredential.createCredential(username, database, password);
+
+            // Clear original password array
+            for (int i = 0; i < password.length; i++)
+                password[i] = (char) 0;
+
+            return connect0(new ServerAddress(host, port), cred);
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to connect to default local database (with user&pass)", ex);
+        }
+    }
+
+    private AsyncMongoManager connect0(ServerAddress address, MongoCredential cred) {
+        MongoClientSettings.Builder settings = poolOptions.applyTo(MongoClientSettings.builder()).
+                applyToClusterSettings(cluster -> cluster.
+                        hosts(Collections.singletonList(address)));
+
+        if (cred != null)
+            settings.credential(cred);
+
+        client = MongoClients.create(settings.build());
+        return this;
+    }
+
+    public AsyncMongoManager select(String database) {
+        ensureConnected();
+        selected = client.getDatabase(Check.
+                notNull(database, "database name cannot be null"));
+        return this;
+    }
+
+    public MongoDatabase getSelectedDatabase() {
+        ensureSelected();
+        return selected;
+    }
+
+    public boolean isDatabaseSelected() {
+        ensureConnected();
+        return selected != null;
+    }
+
+    public boolean isConnected() {
+        return client != null;
+    }
+
+    private void ensureSelected() {
+        ensureConnected();
+
+        if (!(isDatabaseSelected()))
+            throw new IllegalStateException("no database selected");
+    }
+
+    private void ensureConnected() {
+        if (!(isConnected()))
+            throw new IllegalStateException("not connected");
+    }
+
+    @Override
+    public void close() {
+        if (!(isConnected()))
+            return;
+
+        try {
+            client.close();
+        } catch (Exception ignored) {}
+    }
+
+    public MongoCollection<Document> getCollection(String collection) {
+        ensureSelected();
+        return selected.getCollection(Check.
+                notNull(collection, "collection name cannot be null"));
+    }
+
+    public CompletableFuture<List<Document>> fetch(String collection, String key, Object val) {
+        // val IS allowed to be null;
+        // getCollection ensures that collection!=null
+        //               and that a connection is open and a database is selected.
+        return all(getCollection(collection).find(new Document(
+                Check.notNull(key, "key cannot be null"), val)));
+    }
+
+    /**
+     * @see MongoManager#fetch(String, String, Object, Bson, int, int)
+     */
+    public CompletableFuture<List<Document>> fetch(String collection, String key, Object val,
+                                                   Bson projection, int batchSize, int limit) {
+        if (batchSize < 0)
+            throw new IllegalArgumentException("batchSize cannot be negative");
+
+        if (limit < 0)
+            throw new IllegalArgumentException("limit cannot be negative");
+
+        FindPublisher<Document> result = getCollection(collection).find(new Document(
+                Check.notNull(key, "key cannot be null"), val)).
+                projection(projection).
+                limit(limit);
+
+        if (batchSize > 0)
+            result.batchSize(batchSize);
+
+        return all(result);
+    }
+
+    public CompletableFuture<Document> fetchFirst(String collection, String key, Object val) {
+        return first(getCollection(collection).find(new Document(
+                Check.notNull(key, "key cannot be null"), val)).first());
+    }
+
+    public CompletableFuture<Void> insertOne(String collection, Document doc) {
+        return first(getCollection(collection).insertOne(
+                Check.notNull(doc, "doc cannot be null"))).thenApply(success -> null);
+    }
+
+    public CompletableFuture<Void> insertMany(String collection, List<Document> docs) {
+        if (Check.notNull(docs, "docs list cannot be null").isEmpty())
+            throw new IllegalArgumentException("nothing to insert");
+
+        MongoCollection<Document> col = getCollection(collection);
+
+        return first((docs.size() == 1) ? col.insertOne(docs.get(0))
+                : col.insertMany(docs)).thenApply(success -> null);
+    }
+
+    /**
+     * Unlike MongoManager#updateOne, this method looks up and updates
+     * the target entry in a single round-trip (findOneAndUpdate).
+     *
+     * @return a future completed with the target entry as it was before
+     *         the update, or completed exceptionally with a NullPointerException
+     *         if there are no entries with the specified ID.
+     */
+    public CompletableFuture<Document> updateOne(String collection, String idKey, Object idVal, Document updatedData) {
+        Check.notNull(idKey, "target entry ID key cannot be null");
+        Check.notNull(updatedData, "updated data cannot be null");
+
+        return first(getCollection(collection).findOneAndUpdate(new Document(idKey, idVal),
+                new Document("$set", updatedData))).thenApply(targetEntry -> {
+                    if (targetEntry == null)
+                        throw new NullPointerException(String.format(
+                                "no entries with \"%s\"=\"%s\" found", idKey, idVal));
+
+                    return targetEntry;
+                });
+    }
+
+    public CompletableFuture<Long> deleteOne(String collection, String idKey, Object idVal) {
+        Check.notNull(idKey, "target entry ID key cannot be null");
+
+        return first(getCollection(collection).deleteOne(
+                new Document(idKey, idVal))).thenApply(result -> result.getDeletedCount());
+    }
+
+    public CompletableFuture<Long> count(String collection) {
+        return first(getCollection(collection).countDocuments());
+    }
+
+    /**
+     * @return a future completed with all items emitted by the specified publisher.
+     */
+    private static <T> CompletableFuture<List<T>> all(Publisher<T> publisher) {
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        List<T> items = new ArrayList<>();
+
+        publisher.subscribe(new FutureSubscriber<T>(future) {
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(items);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * @return a future completed with the first item emitted by the specified
+     *         publisher, or with null if the publisher completed without any.
+     */
+    private static <T> CompletableFuture<T> first(Publisher<T> publisher) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        publisher.subscribe(new FutureSubscriber<T>(future) {
+            @Override
+            public void onNext(T item) {
+                future.complete(item);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(null); // no-op if an item was emitted
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Requests all items at once and fails the future on error.
+     */
+    private abstract static class FutureSubscriber<T> implements Subscriber<T> {
+        private final CompletableFuture<?> future;
+
+        private FutureSubscriber(CompletableFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+}
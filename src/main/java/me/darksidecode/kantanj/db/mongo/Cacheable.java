@@ -31,6 +31,10 @@ import org.bson.Document;
  * and (3) keep track of all changes made to its
  * mutable values and push them to a specified database
  * (if any).
+ *
+ * The "id-key" used by an implementation should be declared
+ * using MongoManager#indexedKeys(String, String...), so that
+ * fetches by it never result in a full collection scan.
  */
 public interface Cacheable {
 
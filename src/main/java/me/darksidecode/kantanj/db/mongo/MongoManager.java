@@ -17,26 +17,61 @@
 package me.darksidecode.kantanj.db.mongo;
 
 import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
 import com.mongodb.ServerAddress;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
 import me.darksidecode.kantanj.types.Check;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MongoManager implements AutoCloseable {
 
+    private static final Logger LOGGER = Logger.getLogger(MongoManager.class.getName());
+
     private static final int DEFAULT_MONGO_PORT = 27017;
 
+    /**
+     * Maximum number of values in a single $in query made by forEachIn(...).
+     */
+    public static final int IN_QUERY_CHUNK_SIZE = 1000;
+
     private MongoClient client;
     private MongoDatabase selected;
 
+    private MongoPoolOptions poolOptions = MongoPoolOptions.defaults();
+
+    /**
+     * Collection name -> keys that must be indexed in that collection.
+     */
+    private final Map<String, Set<String>> indexedKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Collection name + '.' + key pairs that have already been explained.
+     */
+    private final Set<String> explainedQueries = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean explainQueries;
+
     public MongoManager noLogs() {
         Logger.getLogger("com.mongodb").setLevel(Level.OFF);
         Logger.getLogger("org.mongodb").setLevel(Level.OFF);
@@ -44,9 +79,25 @@ public class MongoManager implements AutoCloseable {
         return this;
     }
 
+    /**
+     * Set connection pool, wait queue and socket settings for the next connect(...) call.
+     *
+     * @throws IllegalStateException if already connected.
+     */
+    public MongoManager poolOptions(MongoPoolOptions poolOptions) {
+        Check.state(isConnected(), "pool options must be set before connecting");
+
+        this.poolOptions = Check.notNull(poolOptions, "poolOptions cannot be null");
+        return this;
+    }
+
+    public MongoPoolOptions getPoolOptions() {
+        return poolOptions;
+    }
+
     public MongoManager connectLocal() {
         try {
-            client = new MongoClient();
+            client = new MongoClient(new ServerAddress(), poolOptions.toClientOptions());
             return this;
         } catch (Exception ex) {
             throw new RuntimeException("failed to connect to default local database", ex);
@@ -66,7 +117,7 @@ public class MongoManager implements AutoCloseable {
             throw new IllegalArgumentException("invalid (null, empty or 'spaces-only') host");
 
         try {
-            client = new MongoClient(host);
+            client = new MongoClient(new ServerAddress(host), poolOptions.toClientOptions());
             return this;
         } catch (Exception ex) {
             throw new RuntimeException("failed to connect " +
@@ -82,7 +133,7 @@ public class MongoManager implements AutoCloseable {
             throw new IllegalArgumentException("invalid port " + port);
 
         try {
-            client = new MongoClient(host, port);
+            client = new MongoClient(new ServerAddress(host, port), poolOptions.toClientOptions());
             return this;
         } catch (Exception ex) {
             throw new RuntimeException(String.format("failed to " +
@@ -113,7 +164,7 @@ public class MongoManager implements AutoCloseable {
             for (int i = 0; i < password.length; i++)
                 password[i] = (char) 0;
 
-            client = new MongoClient(new ServerAddress(host, port), cred, MongoClientOptions.builder().build());
+            client = new MongoClient(new ServerAddress(host, port), cred, poolOptions.toClientOptions());
             // deprecated api usage: client = new MongoClient(new ServerAddress(host, port), Collections.singletonList(cred));
 
             return this;
@@ -126,9 +177,103 @@ public class MongoManager implements AutoCloseable {
         ensureConnected();
         selected = client.getDatabase(Check.
                 notNull(database, "database name cannot be null"));
+        explainedQueries.clear();
+
+        indexedKeys.forEach((collection, keys) -> keys.forEach(key -> ensureIndex(collection, key)));
         return this;
     }
 
+    /**
+     * Declare keys of the specified collection that are used to look entries up
+     * (e.g. Cacheable ID keys) and thus must be indexed. Missing indexes are created
+     * for all declared keys every time a database is selected, and instantly if a
+     * database is already selected at the moment of this call.
+     */
+    public MongoManager indexedKeys(String collection, String... keys) {
+        Check.notNull(collection, "collection name cannot be null");
+        Set<String> declared = indexedKeys.computeIfAbsent(
+                collection, k -> ConcurrentHashMap.newKeySet());
+
+        for (String key : Check.notEmpty(keys, "keys cannot be empty")) {
+            declared.add(Check.notNull(key, "key cannot be null"));
+
+            if ((isConnected()) && (isDatabaseSelected()))
+                ensureIndex(collection, key);
+        }
+
+        return this;
+    }
+
+    public Set<String> getIndexedKeys(String collection) {
+        return Collections.unmodifiableSet(indexedKeys.getOrDefault(
+                Check.notNull(collection, "collection name cannot be null"), Collections.emptySet()));
+    }
+
+    /**
+     * Create an ascending index on the specified key of the specified collection,
+     * unless it already exists (the call is a no-op in that case).
+     */
+    public void ensureIndex(String collection, String key) {
+        // getCollection ensures collection!=null and checks state
+        getCollection(collection).createIndex(Indexes.ascending(
+                Check.notNull(key, "key cannot be null")));
+    }
+
+    /**
+     * Debug mode. If enabled, the first query to each collection/key pair made via
+     * fetch(...), updateOne(...) or deleteOne(...) is explained, and a warning is
+     * logged if the query planner resorts to a full collection scan (COLLSCAN).
+     *
+     * Adds an extra round-trip per collection/key pair, so should not normally
+     * be enabled in production.
+     */
+    public MongoManager explainQueries(boolean explainQueries) {
+        this.explainQueries = explainQueries;
+        explainedQueries.clear();
+        return this;
+    }
+
+    public boolean isExplainQueries() {
+        return explainQueries;
+    }
+
+    private void explainIfNeeded(String collection, String key, Object val) {
+        if ((!(explainQueries)) || (!(explainedQueries.add(collection + '.' + key))))
+            return;
+
+        try {
+            Document explained = getSelectedDatabase().runCommand(new Document("explain",
+                    new Document("find", collection).append("filter", new Document(key, val))).
+                    append("verbosity", "queryPlanner"));
+            Document queryPlanner = explained.get("queryPlanner", Document.class);
+
+            if ((queryPlanner != null) && (hasStage(queryPlanner.get("winningPlan"), "COLLSCAN")))
+                LOGGER.warning(String.format("query on \"%s\" by \"%s\" performs a full collection " +
+                        "scan (COLLSCAN); consider declaring an index using indexedKeys(...)", collection, key));
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "failed to explain query on \"" + collection + "\" by \"" + key + "\"", ex);
+        }
+    }
+
+    private static boolean hasStage(Object plan, String stage) {
+        if (plan instanceof Document) {
+            Document doc = (Document) plan;
+
+            if (stage.equals(doc.get("stage")))
+                return true;
+
+            // Look through nested stages (inputStage, inputStages, shards, etc.).
+            for (Object nested : doc.values())
+                if (hasStage(nested, stage))
+                    return true;
+        } else if (plan instanceof List)
+            for (Object nested : (List<?>) plan)
+                if (hasStage(nested, stage))
+                    return true;
+
+        return false;
+    }
+
     public MongoDatabase getSelectedDatabase() {
         ensureSelected();
         return selected;
@@ -180,8 +325,43 @@ public class MongoManager implements AutoCloseable {
         // val IS allowed to be null;
         // getCollection ensures that collection!=null
         //               and that a connection is open and a database is selected.
-        return getCollection(collection).find(new Document(
-                Check.notNull(key, "key cannot be null"), val));
+        MongoCollection<Document> col = getCollection(collection);
+        explainIfNeeded(collection, Check.notNull(key, "key cannot be null"), val);
+
+        return col.find(new Document(key, val));
+    }
+
+    /**
+     * @param projection fields to include/exclude (e.g. Projections.include("a", "b")),
+     *                   or null to fetch whole documents.
+     */
+    public FindIterable<Document> fetch(String collection, String key, Object val, Bson projection) {
+        return fetch(collection, key, val, projection, 0, 0);
+    }
+
+    /**
+     * @param projection fields to include/exclude (e.g. Projections.include("a", "b")),
+     *                   or null to fetch whole documents.
+     * @param batchSize number of documents the server returns per batch, or 0 for driver default.
+     * @param limit maximum number of documents to fetch, or 0 for no limit.
+     */
+    public FindIterable<Document> fetch(String collection, String key, Object val,
+                                        Bson projection, int batchSize, int limit) {
+        if (batchSize < 0)
+            throw new IllegalArgumentException("batchSize cannot be negative");
+
+        if (limit < 0)
+            throw new IllegalArgumentException("limit cannot be negative");
+
+        // Parameter types and state checks are done inside the base fetch(...) method
+        FindIterable<Document> result = fetch(collection, key, val).
+                projection(projection).
+                limit(limit);
+
+        if (batchSize > 0)
+            result.batchSize(batchSize);
+
+        return result;
     }
 
     public Document fetchFirst(String collection, String key, Object val) {
@@ -189,6 +369,98 @@ public class MongoManager implements AutoCloseable {
         return fetch(collection, key, val).first();
     }
 
+    public Document fetchFirst(String collection, String key, Object val, Bson projection) {
+        return fetch(collection, key, val, projection).first();
+    }
+
+    /**
+     * Process all matching documents one by one, holding no more than a single
+     * batch of documents in memory at a time. The underlying cursor is always
+     * closed, even if the action throws.
+     *
+     * @see MongoManager#fetch(String, String, Object, Bson, int, int)
+     */
+    public void forEach(String collection, String key, Object val,
+                        Bson projection, int batchSize, Consumer<? super Document> action) {
+        Check.notNull(action, "action cannot be null");
+
+        try (MongoCursor<Document> cursor = fetch(
+                collection, key, val, projection, batchSize, 0).iterator()) {
+            while (cursor.hasNext())
+                action.accept(cursor.next());
+        }
+    }
+
+    /**
+     * Lazily stream all matching documents, holding no more than a single
+     * batch of documents in memory at a time.
+     *
+     * The returned stream holds an open server cursor and thus
+     * **must be closed** by the caller, preferably like this:
+     *
+     *     try (Stream<Document> docs = mongo.stream(...)) {
+     *         docs.forEach(...);
+     *     }
+     *
+     * @see MongoManager#fetch(String, String, Object, Bson, int, int)
+     */
+    public Stream<Document> stream(String collection, String key, Object val,
+                                   Bson projection, int batchSize) {
+        MongoCursor<Document> cursor = fetch(
+                collection, key, val, projection, batchSize, 0).iterator();
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(cursor::close);
+    }
+
+    /**
+     * Process all documents whose `key` is equal to any of the specified values
+     * using as few queries as possible: values are split into chunks of at most
+     * IN_QUERY_CHUNK_SIZE, and a single $in query is issued for each chunk.
+     *
+     * NOTE: documents are processed in the order the server returns them,
+     *       which generally does not match the order of `vals`.
+     *
+     * @param projection fields to include/exclude, or null to fetch whole documents.
+     *                   If not null, it must include `key` for callers to be able to
+     *                   tell which value a document belongs to.
+     */
+    public void forEachIn(String collection, String key, Collection<?> vals,
+                          Bson projection, Consumer<? super Document> action) {
+        Check.notNull(key, "key cannot be null");
+        Check.notNull(vals, "vals cannot be null");
+        Check.notNull(action, "action cannot be null");
+
+        if (vals.isEmpty())
+            return;
+
+        // getCollection ensures collection!=null and checks state
+        MongoCollection<Document> col = getCollection(collection);
+        explainIfNeeded(collection, key, vals.iterator().next());
+        List<Object> chunk = new ArrayList<>(Math.min(vals.size(), IN_QUERY_CHUNK_SIZE));
+
+        for (Object val : vals) {
+            chunk.add(val);
+
+            if (chunk.size() == IN_QUERY_CHUNK_SIZE) {
+                forEachIn0(col, key, chunk, projection, action);
+                chunk.clear();
+            }
+        }
+
+        if (!(chunk.isEmpty()))
+            forEachIn0(col, key, chunk, projection, action);
+    }
+
+    private static void forEachIn0(MongoCollection<Document> col, String key, List<Object> chunk,
+                                   Bson projection, Consumer<? super Document> action) {
+        try (MongoCursor<Document> cursor = col.find(Filters.in(key, chunk)).
+                projection(projection).iterator()) {
+            while (cursor.hasNext())
+                action.accept(cursor.next());
+        }
+    }
+
     public void insertOne(String collection, Document doc) {
         // getCollection ensures collection!=null and checks state
         getCollection(collection).insertOne(
@@ -213,6 +485,8 @@ public class MongoManager implements AutoCloseable {
 
         // getCollection ensures collection!=null and checks state
         MongoCollection<Document> col = getCollection(collection);
+        explainIfNeeded(collection, idKey, idVal);
+
         Document targetEntry = col.find(new Document(idKey, idVal)).first();
 
         Check.notNull(targetEntry, "no entries with \"%s\"=\"%s\" found", idKey, idVal);
@@ -226,6 +500,8 @@ public class MongoManager implements AutoCloseable {
 
         // getCollection ensures collection!=null and checks state
         MongoCollection<Document> col = getCollection(collection);
+        explainIfNeeded(collection, idKey, idVal);
+
         return col.deleteOne(new Document(idKey, idVal)).getDeletedCount();
     }
 
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.db.mongo;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientSettings;
+import lombok.Getter;
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool, wait queue and socket settings shared by
+ * MongoManager and AsyncMongoManager. All durations are stored
+ * in milliseconds; zero means "no timeout" (driver semantics).
+ *
+ * Defaults match the defaults of the MongoDB Java driver.
+ */
+@Getter
+public class MongoPoolOptions {
+
+    /**
+     * Maximum number of connections per server.
+     */
+    private int maxPoolSize = 100;
+
+    /**
+     * Minimum number of connections per server kept open even when idle.
+     */
+    private int minPoolSize = 0;
+
+    /**
+     * Maximum number of threads/operations allowed to wait for a connection
+     * to become available. Waiters above this limit fail instantly.
+     *
+     * The 3.12 drivers (both the synchronous and the Reactive Streams one) still
+     * enforce this limit, but deprecate it: the 4.x drivers have no wait queue limit
+     * and only bound waiting by maxWaitTime, so this setting won't survive an upgrade.
+     */
+    private int maxWaitQueueSize = 500;
+
+    /**
+     * Maximum time a thread/operation may wait for a connection to become available.
+     */
+    private long maxWaitTimeMillis = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * Maximum idle time of a pooled connection before it is closed.
+     */
+    private long maxConnectionIdleTimeMillis;
+
+    /**
+     * Maximum life time of a pooled connection before it is closed.
+     */
+    private long maxConnectionLifeTimeMillis;
+
+    private int connectTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(10);
+
+    private int socketTimeoutMillis;
+
+    public MongoPoolOptions() {}
+
+    private MongoPoolOptions(MongoPoolOptions other) {
+        this.maxPoolSize = other.maxPoolSize;
+        this.minPoolSize = other.minPoolSize;
+        this.maxWaitQueueSize = other.maxWaitQueueSize;
+        this.maxWaitTimeMillis = other.maxWaitTimeMillis;
+        this.maxConnectionIdleTimeMillis = other.maxConnectionIdleTimeMillis;
+        this.maxConnectionLifeTimeMillis = other.maxConnectionLifeTimeMillis;
+        this.connectTimeoutMillis = other.connectTimeoutMillis;
+        this.socketTimeoutMillis = other.socketTimeoutMillis;
+    }
+
+    public static MongoPoolOptions defaults() {
+        return new MongoPoolOptions();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @SuppressWarnings("deprecation") // see maxWaitQueueSize
+    MongoClientOptions toClientOptions() {
+        // The synchronous driver has no direct "wait queue size" setting;
+        // it is expressed as a multiplier of the pool size instead.
+        int waitQueueMultiplier = Math.max(1,
+                (maxWaitQueueSize + maxPoolSize - 1) / maxPoolSize);
+
+        return MongoClientOptions.builder().
+                connectionsPerHost(maxPoolSize).
+                minConnectionsPerHost(minPoolSize).
+                threadsAllowedToBlockForConnectionMultiplier(waitQueueMultiplier).
+                maxWaitTime((int) maxWaitTimeMillis).
+                maxConnectionIdleTime((int) maxConnectionIdleTimeMillis).
+                maxConnectionLifeTime((int) maxConnectionLifeTimeMillis).
+                connectTimeout(connectTimeoutMillis).
+                socketTimeout(socketTimeoutMillis).
+                build();
+    }
+
+    @SuppressWarnings("deprecation") // see maxWaitQueueSize
+    MongoClientSettings.Builder applyTo(MongoClientSettings.Builder settings) {
+        return settings.
+                applyToConnectionPoolSettings(pool -> pool.
+                        maxSize(maxPoolSize).
+                        minSize(minPoolSize).
+                        maxWaitQueueSize(maxWaitQueueSize).
+                        maxWaitTime(maxWaitTimeMillis, TimeUnit.MILLISECONDS).
+                        maxConnectionIdleTime(maxConnectionIdleTimeMillis, TimeUnit.MILLISECONDS).
+                        maxConnectionLifeTime(maxConnectionLifeTimeMillis, TimeUnit.MILLISECONDS)).
+                applyToSocketSettings(socket -> socket.
+                        connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS).
+                        readTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public static final class Builder {
+        private final MongoPoolOptions opts = new MongoPoolOptions();
+
+        Builder() {}
+
+        /**
+         * @return a new instance each time, so that further changes to this builder
+         *         don't affect options that have already been built (and maybe used).
+         */
+        public MongoPoolOptions build() {
+            if (opts.minPoolSize > opts.maxPoolSize)
+                throw new IllegalArgumentException("minPoolSize cannot be greater than maxPoolSize");
+
+            return new MongoPoolOptions(opts);
+        }
+
+        public Builder maxPoolSize(int maxPoolSize) {
+            if (maxPoolSize < 1)
+                throw new IllegalArgumentException("maxPoolSize must be a positive integer");
+
+            opts.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        public Builder minPoolSize(int minPoolSize) {
+            if (minPoolSize < 0)
+                throw new IllegalArgumentException("minPoolSize cannot be negative");
+
+            opts.minPoolSize = minPoolSize;
+            return this;
+        }
+
+        public Builder maxWaitQueueSize(int maxWaitQueueSize) {
+            if (maxWaitQueueSize < 0)
+                throw new IllegalArgumentException("maxWaitQueueSize cannot be negative");
+
+            opts.maxWaitQueueSize = maxWaitQueueSize;
+            return this;
+        }
+
+        public Builder maxWaitTime(long maxWaitTime, TimeUnit unit) {
+            opts.maxWaitTimeMillis = toMillis(maxWaitTime, unit, "maxWaitTime");
+            return this;
+        }
+
+        public Builder maxConnectionIdleTime(long maxIdleTime, TimeUnit unit) {
+            opts.maxConnectionIdleTimeMillis = toMillis(maxIdleTime, unit, "maxConnectionIdleTime");
+            return this;
+        }
+
+        public Builder maxConnectionLifeTime(long maxLifeTime, TimeUnit unit) {
+            opts.maxConnectionLifeTimeMillis = toMillis(maxLifeTime, unit, "maxConnectionLifeTime");
+            return this;
+        }
+
+        public Builder connectTimeout(long connectTimeout, TimeUnit unit) {
+            opts.connectTimeoutMillis = (int) toMillis(connectTimeout, unit, "connectTimeout");
+            return this;
+        }
+
+        public Builder socketTimeout(long socketTimeout, TimeUnit unit) {
+            opts.socketTimeoutMillis = (int) toMillis(socketTimeout, unit, "socketTimeout");
+            return this;
+        }
+
+        private static long toMillis(long duration, TimeUnit unit, String name) {
+            if (duration < 0)
+                throw new IllegalArgumentException(name + " cannot be negative");
+
+            long millis = Check.notNull(unit, "unit cannot be null").toMillis(duration);
+
+            if (millis > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(name + " is too large");
+
+            return millis;
+        }
+    }
+
+}
@@ -18,23 +18,46 @@ package me.darksidecode.kantanj.ipapi;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import me.darksidecode.kantanj.formatting.CommonJson;
+import me.darksidecode.kantanj.networking.CompactIP;
 import me.darksidecode.kantanj.networking.GetHttpRequest;
 import me.darksidecode.kantanj.networking.Networking;
+import me.darksidecode.kantanj.networking.PostHttpRequest;
 import me.darksidecode.kantanj.networking.SampleUserAgents;
 import me.darksidecode.kantanj.system.Threads;
-import me.darksidecode.kantanj.time.ExpiringList;
+import me.darksidecode.kantanj.time.SlidingWindowCounter;
 import me.darksidecode.kantanj.types.Check;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An http://ip-api.com IP information API wrapper.
  * Uses JSON.
+ *
+ * Thread-safe. Cache hits never block, and lookups of different
+ * IPs are performed concurrently. The *Async methods never block at all,
+ * see infoAsync(String, IPAPILanguage).
  */
 public class IPAPI {
 
@@ -42,10 +65,17 @@ public class IPAPI {
 
     private static final int MAX_REQUESTS_PER_MIN = 40; // 45 for ip-api
 
+    private static final int MAX_BATCH_REQUESTS_PER_MIN = 12; // 15 for ip-api
+
+    /**
+     * Maximum number of IPs ip-api accepts in a single batch request.
+     */
+    public static final int MAX_IPS_PER_BATCH = 100;
+
     private static final long MIN_BLOCK_MILLIS = 1000;
 
     @Getter @Setter
-    private static boolean enableCaching = true;
+    private static volatile boolean enableCaching = true;
 
     /**
      * Should the current thread be blocked for `threadBlockMillis` if the number
@@ -53,22 +83,57 @@ public class IPAPI {
      * This is necessary in order to avoid the requestor IP being banned.
      */
     @Getter @Setter
-    private static boolean blockOnLimitExcess = true;
+    private static volatile boolean blockOnLimitExcess = true;
+
+    /**
+     * A local (e.g. offline) source of IP information, consulted before the
+     * cache and the remote API. Set to null (default) to only use the remote API.
+     */
+    @Getter @Setter
+    private static volatile IPResolver localResolver;
 
     /**
      * @see IPAPI#blockOnLimitExcess
      */
-    private static long threadBlockMillis = TimeUnit.SECONDS.toMillis(30);
+    private static volatile long threadBlockMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private static final SlidingWindowCounter requestCounter = new SlidingWindowCounter(1, TimeUnit.MINUTES);
+
+    /**
+     * ip-api limits batch requests separately from single lookups.
+     */
+    private static final SlidingWindowCounter batchRequestCounter = new SlidingWindowCounter(1, TimeUnit.MINUTES);
+
+    @Getter
+    private static volatile IPAPICacheOptions cacheOptions = IPAPICacheOptions.defaults();
+
+    /**
+     * Entries also keep their own expiry time, which may be earlier than the one
+     * set by expireAfterWrite if they were loaded from the persistent cache.
+     */
+    private static volatile Cache<IPAPIRequest, CachedInfo> cache = buildCache(cacheOptions);
+
+    private static volatile IPAPICacheStore persistentCache;
+
+    /**
+     * Dispatches queued async lookups once requestCounter is below MAX_REQUESTS_PER_MIN.
+     */
+    private static final ScheduledExecutorService asyncScheduler =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "kantanj-ipapi-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-    private static final ExpiringList requestCounter = new ExpiringList(1, TimeUnit.MINUTES);
+    private static final Queue<AsyncLookup> asyncQueue = new ConcurrentLinkedQueue<>();
 
-    private static final Cache<Integer, IPAddress> cache =
-            CacheBuilder.newBuilder().
-                    expireAfterWrite(1, TimeUnit.DAYS). // let the IP data change once a day
-                    build();
+    private static final AtomicBoolean asyncDispatchScheduled = new AtomicBoolean();
 
-    private static final Object cacheLock = new Object();
-    private static final Object requestLock = new Object();
+    /**
+     * Async lookups queued or in progress, so that concurrent misses for the same IP share one request.
+     */
+    private static final ConcurrentMap<IPAPIRequest, CompletableFuture<IPAddress>>
+            asyncInFlight = new ConcurrentHashMap<>();
 
     public static void setThreadBlockTime(long blockTime, TimeUnit timeUnit) {
         if (blockTime < 1)
@@ -83,12 +148,67 @@ public class IPAPI {
         threadBlockMillis = millis;
     }
 
+    /**
+     * Replace the in-memory cache with a new one configured as specified.
+     * Entries of the current cache are moved to the new one (as long as they fit).
+     */
+    public static synchronized void configureCache(IPAPICacheOptions options) {
+        Check.notNull(options, "options cannot be null");
+
+        Cache<IPAPIRequest, CachedInfo> newCache = buildCache(options);
+        newCache.putAll(cache.asMap());
+
+        cacheOptions = options;
+        cache = newCache;
+    }
+
+    /**
+     * @return statistics of the in-memory cache (all zeros unless
+     *         IPAPICacheOptions#recordStats is enabled).
+     */
+    public static CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    private static Cache<IPAPIRequest, CachedInfo> buildCache(IPAPICacheOptions options) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().
+                maximumSize(options.getMaximumSize()).
+                expireAfterWrite(options.getTtlMillis(), TimeUnit.MILLISECONDS);
+
+        if (options.isRecordStats())
+            builder.recordStats();
+
+        return builder.build();
+    }
+
+    /**
+     * Enable the persistent tier of the cache: load all live entries from the specified
+     * store into memory, and write all entries cached from now on to the store as well.
+     * Should be called once on startup. Pass null to stop writing to the previous store.
+     */
+    public static void setPersistentCache(IPAPICacheStore store) {
+        if (store != null)
+            for (IPAPICacheStore.Entry entry : store.load())
+                cache.put(IPAPIRequest.of(entry.ip, entry.lang),
+                        new CachedInfo(entry.info, entry.expiresAtMillis));
+
+        persistentCache = store;
+    }
+
+    public static IPAPICacheStore getPersistentCache() {
+        return persistentCache;
+    }
+
     public static IPAddress info(InetAddress address) {
-        return info(address.getHostAddress());
+        return info(address, IPAPILanguage.ENGLISH);
     }
 
     public static IPAddress info(InetAddress address, IPAPILanguage lang) {
-        return info(address.getHostAddress(), lang);
+        Check.notNull(address, "address cannot be null");
+        Check.notNull(lang, "lang cannot be null");
+
+        // Straight from the address bytes, without formatting and re-parsing a string.
+        return info(new IPAPIRequest(CompactIP.of(address), lang));
     }
 
     public static IPAddress info(String ip) {
@@ -96,55 +216,329 @@ public class IPAPI {
     }
 
     public static IPAddress info(String ip, IPAPILanguage lang) {
+        Check.notNull(ip, "ip cannot be null");
+        Check.notNull(lang, "lang cannot be null");
+
+        return info(IPAPIRequest.of(ip, lang));
+    }
+
+    private static IPAddress info(IPAPIRequest key) {
+        IPAddress local = resolveLocally(key);
+
+        if (local != null)
+            return local;
+
+        if (!(enableCaching))
+            return info0(key.getQuery(), key.lang);
+
+        Cache<IPAPIRequest, CachedInfo> cache = IPAPI.cache;
+
+        try {
+            // Hits are lock-free. Concurrent misses for the same IP wait for a single
+            // lookup (Guava only locks the entry being loaded), while misses for
+            // different IPs are looked up in parallel.
+            CachedInfo cached = cache.get(key, () -> cacheable(key, info0(key.getQuery(), key.lang)));
+
+            if (cached.isExpired()) {
+                cache.asMap().remove(key, cached);
+                cached = cache.get(key, () -> cacheable(key, info0(key.getQuery(), key.lang)));
+            }
+
+            return cached.info;
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new RuntimeException("failed to get info about " + key.getQuery(), cause);
+        }
+    }
+
+    public static CompletableFuture<IPAddress> infoAsync(InetAddress address) {
+        return infoAsync(address, IPAPILanguage.ENGLISH);
+    }
+
+    public static CompletableFuture<IPAddress> infoAsync(InetAddress address, IPAPILanguage lang) {
+        Check.notNull(address, "address cannot be null");
+        Check.notNull(lang, "lang cannot be null");
+
+        return infoAsync(new IPAPIRequest(CompactIP.of(address), lang));
+    }
+
+    public static CompletableFuture<IPAddress> infoAsync(String ip) {
+        return infoAsync(ip, IPAPILanguage.ENGLISH);
+    }
+
+    /**
+     * Same as info(String, IPAPILanguage), but never blocks the calling thread. Local
+     * and cached results are returned as already completed futures. Other lookups are
+     * queued, and sent one by one as soon as the requests-per-minute limit allows, so
+     * instead of putting the caller to sleep on limit excess, the future just completes
+     * later. Concurrent async lookups of the same IP share a single request.
+     *
+     * Async and blocking lookups share the same requests-per-minute limit, so async
+     * lookups also wait for the requests recently made by blocking ones. Blocking
+     * lookups never wait in the async queue, though.
+     *
+     * @return a future completed with info about the specified IP, or completed
+     *         exceptionally if the lookup failed.
+     */
+    public static CompletableFuture<IPAddress> infoAsync(String ip, IPAPILanguage lang) {
+        Check.notNull(ip, "ip cannot be null");
+        Check.notNull(lang, "lang cannot be null");
+
+        return infoAsync(IPAPIRequest.of(ip, lang));
+    }
+
+    /**
+     * @return the number of async lookups waiting for the requests-per-minute limit.
+     */
+    public static int getQueuedAsyncLookups() {
+        return asyncQueue.size();
+    }
+
+    private static CompletableFuture<IPAddress> infoAsync(IPAPIRequest key) {
+        IPAddress local = resolveLocally(key);
+
+        if (local != null)
+            return CompletableFuture.completedFuture(local);
+
         if (enableCaching) {
-            // Caching of IPAPIRequest objects doesn't work for some reason:
-            // cache.get(ipapiRequest) always returns null.
-            IPAPIRequest ipapiRequest = new IPAPIRequest(ip, lang);
-            int hash = ipapiRequest.hashCode();
+            CachedInfo cached = cache.getIfPresent(key);
+
+            if ((cached != null) && (!(cached.isExpired())))
+                return CompletableFuture.completedFuture(cached.info);
+        }
+
+        CompletableFuture<IPAddress> future = new CompletableFuture<>();
+        CompletableFuture<IPAddress> existing = asyncInFlight.putIfAbsent(key, future);
+
+        if (existing != null)
+            return existing.thenApply(info -> info); // don't let callers complete the shared future
+
+        asyncQueue.add(new AsyncLookup(key, future));
+
+        if (asyncDispatchScheduled.compareAndSet(false, true))
+            asyncScheduler.execute(IPAPI::dispatchAsync);
+
+        return future.thenApply(info -> info);
+    }
+
+    /**
+     * Sends as many queued async lookups as the limit allows right now,
+     * and schedules itself to run again once the next one may be sent.
+     */
+    private static void dispatchAsync() {
+        AsyncLookup lookup;
+
+        while ((lookup = asyncQueue.peek()) != null) {
+            if (requestCounter.count() >= MAX_REQUESTS_PER_MIN) {
+                // Retry once the oldest request leaves the window.
+                long waitMillis = Math.max(1, requestCounter.millisUntilNextExpiry());
+                asyncScheduler.schedule(IPAPI::dispatchAsync, waitMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            asyncQueue.poll();
+            requestCounter.incrementAndCount();
+            send(lookup);
+        }
+
+        asyncDispatchScheduled.set(false);
+
+        // Something may have been queued after the loop, but before the flag was reset.
+        if ((!(asyncQueue.isEmpty())) && (asyncDispatchScheduled.compareAndSet(false, true)))
+            asyncScheduler.execute(IPAPI::dispatchAsync);
+    }
+
+    private static void send(AsyncLookup lookup) {
+        IPAPIRequest key = lookup.key;
+
+        try {
+            Networking.Http.getAsync(lookupRequest(key.getQuery(), key.lang)).
+                    thenApply(response -> CommonJson.fromJson(response, IPAddress.class)).
+                    whenComplete((info, t) -> {
+                        // Cache first, so that a lookup started right after the removal below hits it.
+                        if ((t == null) && (enableCaching))
+                            cache.put(key, cacheable(key, info));
+
+                        asyncInFlight.remove(key, lookup.future);
+
+                        if (t != null)
+                            lookup.future.completeExceptionally(t);
+                        else
+                            lookup.future.complete(info);
+                    });
+        } catch (RuntimeException ex) {
+            // Don't let a single bad lookup stop the dispatch loop (and leave its future pending).
+            asyncInFlight.remove(key, lookup.future);
+            lookup.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * @see IPAPI#infoAll(Collection, IPAPILanguage)
+     */
+    public static Map<String, IPAddress> infoAll(Collection<String> ips) {
+        return infoAll(ips, IPAPILanguage.ENGLISH);
+    }
+
+    /**
+     * Get info about multiple IPs at once. IPs that are not cached yet are looked up
+     * using ip-api's batch endpoint, up to MAX_IPS_PER_BATCH IPs per request, and each
+     * batch request only counts once against the requests-per-minute limit.
+     *
+     * @return info about each of the specified IPs, in the order they are specified in
+     *         (duplicates are only included once).
+     */
+    public static Map<String, IPAddress> infoAll(Collection<String> ips, IPAPILanguage lang) {
+        Check.notNull(ips, "ips cannot be null");
+        Check.notNull(lang, "lang cannot be null");
+
+        Map<String, IPAddress> result = new LinkedHashMap<>(ips.size() * 4 / 3 + 1);
+        List<String> misses = new ArrayList<>();
+        List<IPAPIRequest> missKeys = new ArrayList<>();
+
+        for (String ip : ips) {
+            if (result.containsKey(Check.notNull(ip, "ips cannot contain null")))
+                continue; // duplicate
+
+            IPAPIRequest key = IPAPIRequest.of(ip, lang);
+            IPAddress cached = resolveLocally(key);
 
-            synchronized (cacheLock) {
-                IPAddress cached = cache.getIfPresent(hash);
+            if ((cached == null) && (enableCaching)) {
+                CachedInfo cachedInfo = cache.getIfPresent(key);
 
-                if (cached != null)
-                    return cached;
+                if ((cachedInfo != null) && (!(cachedInfo.isExpired())))
+                    cached = cachedInfo.info;
+            }
 
-                IPAddress ipAddr = info0(ip, lang);
-                cache.put(hash, ipAddr);
+            result.put(ip, cached); // also reserves the position to preserve the order
 
-                return ipAddr;
+            if (cached == null) {
+                misses.add(ip);
+                missKeys.add(key);
             }
-        } else
-            return info0(ip, lang);
+        }
+
+        for (int from = 0; from < misses.size(); from += MAX_IPS_PER_BATCH) {
+            List<String> batch = misses.subList(from, Math.min(misses.size(), from + MAX_IPS_PER_BATCH));
+            IPAddress[] infos = batch0(batch, lang);
+
+            for (int i = 0; i < infos.length; i++) {
+                result.put(batch.get(i), infos[i]);
+
+                if (enableCaching) {
+                    IPAPIRequest key = missKeys.get(from + i);
+                    cache.put(key, cacheable(key, infos[i]));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static CachedInfo cacheable(IPAPIRequest key, IPAddress info) {
+        long expiresAtMillis = System.currentTimeMillis() + cacheOptions.getTtlMillis();
+        IPAPICacheStore store = persistentCache;
+
+        if (store != null)
+            store.append(key.getQuery(), key.lang, info, expiresAtMillis);
+
+        return new CachedInfo(info, expiresAtMillis);
+    }
+
+    private static IPAddress resolveLocally(IPAPIRequest key) {
+        IPResolver resolver = localResolver;
+
+        if (resolver == null)
+            return null;
+
+        return (key.address instanceof CompactIP) ? resolver.resolve((CompactIP) key.address, key.lang)
+                : resolver.resolve((String) key.address, key.lang);
+    }
+
+    private static IPAddress[] batch0(List<String> ips, IPAPILanguage lang) {
+        int batchRequestsLastMin = batchRequestCounter.incrementAndCount();
+
+        if ((batchRequestsLastMin > MAX_BATCH_REQUESTS_PER_MIN) && (blockOnLimitExcess))
+            // Block to avoid getting our IP banned.
+            Threads.sleepQuietly(threadBlockMillis);
+
+        PostHttpRequest request = ((PostHttpRequest) new PostHttpRequest().
+                baseUrl(BASE_URL).
+                path("batch").
+                queryParam("lang", lang.getIso639Name()).
+                userAgent(SampleUserAgents.MOZILLA_WIN_NT)).
+                postJsonData(new ArrayList<>(ips));
+
+        String response = Networking.Http.post(request);
+        IPAddress[] infos = CommonJson.fromJson(response, IPAddress[].class);
+
+        // ip-api returns results in the same order as IPs are specified in the request.
+        if ((infos == null) || (infos.length != ips.size()))
+            throw new RuntimeException("unexpected batch response: expected info about "
+                    + ips.size() + " IPs, but got " + ((infos == null) ? 0 : infos.length));
+
+        return infos;
     }
 
     private static IPAddress info0(String ip, IPAPILanguage lang) {
-        synchronized (requestLock) {
-            int requestsLastMin = requestCounter.updateAndCount();
-
-            if ((requestsLastMin > MAX_REQUESTS_PER_MIN) && (blockOnLimitExcess))
-                // Block to avoid getting our IP banned.
-                Threads.sleepQuietly(threadBlockMillis);
-
-            GetHttpRequest request = (GetHttpRequest) new GetHttpRequest().
-                    baseUrl(BASE_URL).
-                    path("json/" + ip).
-                    queryParam("lang", lang.getIso639Name()).
-                    requestProperty("Content-Type", "application/json; charset=UTF-8").
-                    userAgent(SampleUserAgents.MOZILLA_WIN_NT);
-
-            String response = Networking.Http.get(request);
-            return CommonJson.fromJson(response, IPAddress.class);
+        // SlidingWindowCounter is thread-safe itself, so there's no need to hold any lock
+        // (and thus block other lookups) while waiting for the response.
+        int requestsLastMin = requestCounter.incrementAndCount();
+
+        if ((requestsLastMin > MAX_REQUESTS_PER_MIN) && (blockOnLimitExcess))
+            // Block to avoid getting our IP banned.
+            Threads.sleepQuietly(threadBlockMillis);
+
+        String response = Networking.Http.get(lookupRequest(ip, lang));
+        return CommonJson.fromJson(response, IPAddress.class);
+    }
+
+    private static GetHttpRequest lookupRequest(String ip, IPAPILanguage lang) {
+        return (GetHttpRequest) new GetHttpRequest().
+                baseUrl(BASE_URL).
+                path("json/" + ip).
+                queryParam("lang", lang.getIso639Name()).
+                requestProperty("Content-Type", "application/json; charset=UTF-8").
+                userAgent(SampleUserAgents.MOZILLA_WIN_NT);
+    }
+
+    @RequiredArgsConstructor
+    private static final class AsyncLookup {
+        private final IPAPIRequest key;
+        private final CompletableFuture<IPAddress> future;
+    }
+
+    @RequiredArgsConstructor
+    private static final class CachedInfo {
+        private final IPAddress info;
+        private final long expiresAtMillis;
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
         }
     }
 
-    @Getter @RequiredArgsConstructor
-    private static class IPAPIRequest {
-        private final String ip;
+    /**
+     * IP literals are keyed by their numeric value (so that e.g. "::1" and "0:0::1" share
+     * an entry, and keys take much less memory than strings); anything else ip-api accepts
+     * (e.g. domain names) is keyed by the string as is.
+     */
+    @RequiredArgsConstructor @EqualsAndHashCode
+    private static final class IPAPIRequest {
+        private final Object address; // CompactIP or String
         private final IPAPILanguage lang;
 
-        @Override
-        public int hashCode() {
-            return ip.hashCode() + lang.name().hashCode();
+        private static IPAPIRequest of(String ip, IPAPILanguage lang) {
+            CompactIP parsed = CompactIP.tryParse(ip);
+            return new IPAPIRequest((parsed != null) ? parsed : ip, lang);
+        }
+
+        private String getQuery() {
+            return address.toString();
         }
     }
 
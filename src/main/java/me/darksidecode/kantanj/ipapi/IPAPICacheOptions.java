@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.ipapi;
+
+import lombok.Getter;
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds and behavior of the in-memory IPAPI cache.
+ *
+ * @see IPAPI#configureCache(IPAPICacheOptions)
+ */
+@Getter
+public class IPAPICacheOptions {
+
+    /**
+     * Maximum number of cached (IP, language) pairs. Least recently
+     * used entries are evicted when this number is exceeded.
+     */
+    private long maximumSize = 100_000;
+
+    /**
+     * For how long IP info is cached (let the IP data change once a day by default).
+     */
+    private long ttlMillis = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Whether hit/miss/eviction statistics should be recorded (see IPAPI#getCacheStats()).
+     */
+    private boolean recordStats;
+
+    public IPAPICacheOptions() {}
+
+    private IPAPICacheOptions(IPAPICacheOptions other) {
+        this.maximumSize = other.maximumSize;
+        this.ttlMillis = other.ttlMillis;
+        this.recordStats = other.recordStats;
+    }
+
+    public static IPAPICacheOptions defaults() {
+        return new IPAPICacheOptions();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private final IPAPICacheOptions opts = new IPAPICacheOptions();
+
+        Builder() {}
+
+        /**
+         * @return a new instance each time, so that further changes to this builder
+         *         don't affect options that have already been built (and maybe used).
+         */
+        public IPAPICacheOptions build() {
+            return new IPAPICacheOptions(opts);
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 1)
+                throw new IllegalArgumentException("maximumSize must be a positive number");
+
+            opts.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder ttl(long ttl, TimeUnit unit) {
+            if (ttl < 1)
+                throw new IllegalArgumentException("ttl must be positive");
+
+            opts.ttlMillis = Check.notNull(unit, "unit cannot be null").toMillis(ttl);
+            return this;
+        }
+
+        public Builder recordStats(boolean recordStats) {
+            opts.recordStats = recordStats;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.ipapi;
+
+import me.darksidecode.kantanj.formatting.CommonJson;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent tier of the IPAPI cache: a compact append-only text file,
+ * one entry per line (expiry time, language, IP, and the info as JSON).
+ *
+ * Entries are loaded once (at IPAPI#setPersistentCache), and new entries are
+ * written behind by a background thread every `flushIntervalMillis`, so lookups
+ * never wait for the disk. When the file accumulates too many outdated lines,
+ * it is compacted (rewritten with only the newest `maxEntries` live entries).
+ *
+ * Each entry keeps its own expiry time, so entries loaded after a restart
+ * expire at the same moment they would have expired without it.
+ */
+public class IPAPICacheStore implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(IPAPICacheStore.class.getName());
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Path file;
+    private final int maxEntries;
+
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Number of lines in the file, including outdated ones. Only accessed by the writer.
+     */
+    private int lines;
+
+    /**
+     * @param file the file to store entries in. Created if it does not exist.
+     * @param maxEntries maximum number of entries to keep in the file.
+     */
+    public IPAPICacheStore(File file, int maxEntries) {
+        this(file, maxEntries, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public IPAPICacheStore(File file, int maxEntries, long flushInterval, TimeUnit unit) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be a positive integer");
+
+        if (flushInterval < 1)
+            throw new IllegalArgumentException("flushInterval must be positive");
+
+        this.file = Check.notNull(file, "file cannot be null").toPath();
+        this.maxEntries = maxEntries;
+
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "kantanj-ipapi-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long intervalMillis = Check.notNull(unit, "unit cannot be null").toMillis(flushInterval);
+        writer.scheduleWithFixedDelay(this::writePending, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read all live (not expired) entries from the file, compacting it if needed.
+     * If the file cannot be read, an empty list is returned (and the problem is logged).
+     */
+    List<Entry> load() {
+        try {
+            return writer.submit(() -> {
+                Collection<Entry> live = readLive().values();
+                List<Entry> newest = newest(live);
+
+                if (lines > Math.max(newest.size() * 2, 16))
+                    rewrite(newest);
+
+                return newest;
+            }).get();
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "failed to load IPAPI cache from " + file, ex);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Schedule the specified entry to be written to the file.
+     */
+    void append(String ip, IPAPILanguage lang, IPAddress info, long expiresAtMillis) {
+        // Entries with line separators or tabs could corrupt the file, and can only be caused by invalid IPs anyway.
+        if ((ip.indexOf('\n') == -1) && (ip.indexOf('\r') == -1) && (ip.indexOf('\t') == -1))
+            pending.add(new Entry(ip, lang, info, expiresAtMillis));
+    }
+
+    /**
+     * Write all pending entries to the file now, and wait for that to complete.
+     */
+    public void flush() {
+        try {
+            writer.submit(this::writePending).get();
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to flush IPAPI cache to " + file, ex);
+        }
+    }
+
+    /**
+     * Flush pending entries and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        if (writer.isShutdown())
+            return;
+
+        flush();
+        writer.shutdown();
+    }
+
+    private void writePending() {
+        if (pending.isEmpty())
+            return;
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            Entry entry;
+
+            while ((entry = pending.poll()) != null) {
+                out.write(entry.toLine());
+                out.write('\n');
+                lines++;
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "failed to write IPAPI cache to " + file, ex);
+            return;
+        }
+
+        if (lines > maxEntries * 2) {
+            try {
+                rewrite(newest(readLive().values()));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "failed to compact IPAPI cache in " + file, ex);
+            }
+        }
+    }
+
+    /**
+     * @return live entries by IP and language (later lines override earlier ones).
+     */
+    private Map<String, Entry> readLive() throws IOException {
+        Map<String, Entry> live = new HashMap<>();
+        lines = 0;
+
+        if (!(Files.exists(file)))
+            return live;
+
+        long now = System.currentTimeMillis();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                lines++;
+                Entry entry = Entry.fromLine(line);
+
+                if (entry == null)
+                    continue; // corrupted (e.g. partially written) line
+
+                String key = entry.lang.name() + '\t' + entry.ip;
+
+                if (entry.expiresAtMillis > now)
+                    live.put(key, entry);
+                else
+                    live.remove(key);
+            }
+        }
+
+        return live;
+    }
+
+    private List<Entry> newest(Collection<Entry> entries) {
+        List<Entry> newest = new ArrayList<>(entries);
+
+        if (newest.size() > maxEntries) {
+            newest.sort((a, b) -> Long.compare(b.expiresAtMillis, a.expiresAtMillis));
+            newest = new ArrayList<>(newest.subList(0, maxEntries));
+        }
+
+        return newest;
+    }
+
+    private void rewrite(List<Entry> entries) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                out.write(entry.toLine());
+                out.write('\n');
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lines = entries.size();
+    }
+
+    static final class Entry {
+        final String ip;
+        final IPAPILanguage lang;
+        final IPAddress info;
+        final long expiresAtMillis;
+
+        private Entry(String ip, IPAPILanguage lang, IPAddress info, long expiresAtMillis) {
+            this.ip = ip;
+            this.lang = lang;
+            this.info = info;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private String toLine() {
+            return expiresAtMillis + "\t" + lang.name() + '\t' + ip + '\t' + CommonJson.toJson(info);
+        }
+
+        private static Entry fromLine(String line) {
+            String[] fields = line.split("\t", 4);
+
+            if (fields.length != 4)
+                return null;
+
+            try {
+                IPAddress info = CommonJson.fromJson(fields[3], IPAddress.class);
+
+                return (info == null) ? null : new Entry(fields[2],
+                        IPAPILanguage.valueOf(fields[1]), info, Long.parseLong(fields[0]));
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+    }
+
+}
@@ -17,7 +17,10 @@
 package me.darksidecode.kantanj.ipapi;
 
 import com.google.gson.Gson;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.With;
 import me.darksidecode.kantanj.formatting.CommonJson;
 
 import java.io.Serializable;
@@ -26,6 +29,7 @@ import java.io.Serializable;
  * An ip-api.com'S IP JSON information wrapper.
  */
 @Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // for @With
 public class IPAddress implements Serializable {
 
     private static final long serialVersionUID = 1423606597409892108L;
@@ -161,9 +165,34 @@ public class IPAddress implements Serializable {
      * IP used for the query.
      *
      * EXAMPLE: 173.194.67.94
+     *
+     * withQuery(String) returns a copy of this object (all fields included)
+     * with this field set to the specified IP.
      */
+    @With(AccessLevel.PACKAGE)
     private String query;
 
+    public IPAddress() {}
+
+    /**
+     * Info about a location, e.g. of an IP range in an offline database.
+     */
+    static IPAddress located(String countryCode, String country, String regionName,
+                             String city, float lat, float lon, String timezone) {
+        IPAddress location = new IPAddress();
+
+        location.status = "success";
+        location.countryCode = countryCode;
+        location.country = country;
+        location.regionName = regionName;
+        location.city = city;
+        location.lat = lat;
+        location.lon = lon;
+        location.timezone = timezone;
+
+        return location;
+    }
+
     @Override
     public String toString() {
         return toString(CommonJson.getPrettyGsonNoHtmlEsc());
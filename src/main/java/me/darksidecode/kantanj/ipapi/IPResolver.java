@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.ipapi;
+
+import me.darksidecode.kantanj.networking.CompactIP;
+
+/**
+ * A local source of IP information consulted by IPAPI before the remote API.
+ *
+ * @see IPAPI#setLocalResolver(IPResolver)
+ * @see OfflineIPDatabase
+ */
+@FunctionalInterface
+public interface IPResolver {
+
+    /**
+     * Implementations must be thread-safe and should not perform any blocking I/O.
+     *
+     * @return info about the specified IP, or null if this resolver knows nothing about it
+     *         (in which case IPAPI falls back to the remote API).
+     */
+    IPAddress resolve(String ip, IPAPILanguage lang);
+
+    /**
+     * Used by IPAPI for IP literals and InetAddresses. Implementations that index
+     * IPs numerically should override this to avoid formatting and re-parsing the IP.
+     */
+    default IPAddress resolve(CompactIP ip, IPAPILanguage lang) {
+        return resolve(ip.toString(), lang);
+    }
+
+}
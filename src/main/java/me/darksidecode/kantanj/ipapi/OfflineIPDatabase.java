@@ -0,0 +1,448 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.ipapi;
+
+import lombok.Getter;
+import me.darksidecode.kantanj.networking.CompactIP;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An offline IP geolocation database loaded from a CSV file of IP ranges,
+ * e.g. a free "lite" database downloaded from one of the popular providers.
+ *
+ * Each line describes a range of IPs with the following columns (trailing
+ * ones are optional; fields may be enclosed in double quotes):
+ *
+ *     rangeStart,rangeEnd,countryCode,country,regionName,city,lat,lon,timezone
+ *
+ * Range bounds are inclusive, and may be specified either as IPv4/IPv6 literals
+ * or as unsigned decimal numbers. Decimal bounds are IPv4 numbers if both bounds
+ * of the range fit into 32 bits (and neither is an IPv6 literal), and IPv6 numbers
+ * otherwise. IPv4-mapped IPv6 addresses (::ffff:0:0/96) are treated as IPv4 ones;
+ * ranges crossing the bounds of that block are split. Ranges must not overlap
+ * (loading fails with an IOException if they do). Empty lines, comments (lines
+ * starting with '#') and a header line (a first line whose first field is neither
+ * an IP nor a number) are skipped.
+ *
+ * Ranges are kept in sorted primitive arrays (one for IPv4, two longs per bound
+ * for IPv6), and lookups are binary searches that take microseconds. Identical
+ * locations are only stored once. Localized names are not supported: the names
+ * are returned as they are in the file, regardless of the requested language.
+ *
+ *     IPAPI.setLocalResolver(OfflineIPDatabase.load(new File("ip-city-lite.csv")));
+ */
+public final class OfflineIPDatabase implements IPResolver {
+
+    private final long[] v4Starts;
+    private final long[] v4Ends;
+    private final int[] v4Locations;
+
+    private final long[] v6StartsHi;
+    private final long[] v6StartsLo;
+    private final long[] v6EndsHi;
+    private final long[] v6EndsLo;
+    private final int[] v6Locations;
+
+    private final IPAddress[] locations;
+
+    /**
+     * Total number of IP ranges in this database.
+     */
+    @Getter
+    private final int size;
+
+    /**
+     * @throws IOException if any ranges overlap (lookups rely on them being disjoint).
+     */
+    private OfflineIPDatabase(Loader loader) throws IOException {
+        int n4 = loader.v4.size();
+        int n6 = loader.v6.size();
+
+        Integer[] order4 = sortedOrder(n4, (a, b) -> Long.compare(
+                loader.v4.get(a)[0], loader.v4.get(b)[0]));
+        Integer[] order6 = sortedOrder(n6, (a, b) -> compareUnsigned(
+                loader.v6.get(a)[0], loader.v6.get(a)[1], loader.v6.get(b)[0], loader.v6.get(b)[1]));
+
+        v4Starts = new long[n4];
+        v4Ends = new long[n4];
+        v4Locations = new int[n4];
+
+        for (int i = 0; i < n4; i++) {
+            long[] range = loader.v4.get(order4[i]);
+
+            if ((i > 0) && (range[0] <= v4Ends[i - 1]))
+                throw overlap(CompactIP.ofIPv4((int) v4Starts[i - 1]), CompactIP.ofIPv4((int) v4Ends[i - 1]),
+                        CompactIP.ofIPv4((int) range[0]), CompactIP.ofIPv4((int) range[1]));
+
+            v4Starts[i] = range[0];
+            v4Ends[i] = range[1];
+            v4Locations[i] = (int) range[2];
+        }
+
+        v6StartsHi = new long[n6];
+        v6StartsLo = new long[n6];
+        v6EndsHi = new long[n6];
+        v6EndsLo = new long[n6];
+        v6Locations = new int[n6];
+
+        for (int i = 0; i < n6; i++) {
+            long[] range = loader.v6.get(order6[i]);
+
+            if ((i > 0) && (compareUnsigned(range[0], range[1], v6EndsHi[i - 1], v6EndsLo[i - 1]) <= 0))
+                throw overlap(CompactIP.ofIPv6(v6StartsHi[i - 1], v6StartsLo[i - 1]),
+                        CompactIP.ofIPv6(v6EndsHi[i - 1], v6EndsLo[i - 1]),
+                        CompactIP.ofIPv6(range[0], range[1]), CompactIP.ofIPv6(range[2], range[3]));
+
+            v6StartsHi[i] = range[0];
+            v6StartsLo[i] = range[1];
+            v6EndsHi[i] = range[2];
+            v6EndsLo[i] = range[3];
+            v6Locations[i] = (int) range[4];
+        }
+
+        locations = loader.locations.toArray(new IPAddress[0]);
+        size = n4 + n6;
+    }
+
+    public static OfflineIPDatabase load(File file) throws IOException {
+        Check.notNull(file, "file cannot be null");
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Load a database from CSV data read from the specified reader.
+     * The reader is not closed by this method.
+     *
+     * @throws IOException if the data could not be read or is malformed.
+     */
+    public static OfflineIPDatabase load(Reader reader) throws IOException {
+        Check.notNull(reader, "reader cannot be null");
+
+        BufferedReader in = (reader instanceof BufferedReader)
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        Loader loader = new Loader();
+        String line;
+        int lineNumber = 0;
+
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+
+            if ((line.isEmpty()) || (line.startsWith("#")))
+                continue;
+
+            List<String> fields = splitCsv(line);
+
+            if ((lineNumber == 1) && (!(Loader.isBound(fields.get(0)))))
+                continue; // header
+
+            try {
+                loader.add(fields);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("malformed line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        return new OfflineIPDatabase(loader);
+    }
+
+    @Override
+    public IPAddress resolve(String ip, IPAPILanguage lang) {
+        Check.notNull(ip, "ip cannot be null");
+        CompactIP parsed = CompactIP.tryParse(ip);
+
+        return (parsed == null) ? null : lookup(parsed, ip); // null if not an IP literal
+    }
+
+    @Override
+    public IPAddress resolve(CompactIP ip, IPAPILanguage lang) {
+        return lookup(Check.notNull(ip, "ip cannot be null"), null);
+    }
+
+    /**
+     * @param query the IP as specified by the caller, or null to format it only on a match.
+     */
+    private IPAddress lookup(CompactIP ip, String query) {
+        int location = ip.isIPv4() ? findV4(ip.getIPv4() & 0xFFFFFFFFL) : findV6(ip.getHigh(), ip.getLow());
+
+        if (location < 0)
+            return null;
+
+        return locations[location].withQuery((query != null) ? query : ip.toString());
+    }
+
+    private int findV4(long ip) {
+        int i = Arrays.binarySearch(v4Starts, ip);
+
+        if (i < 0)
+            i = -i - 2; // last range starting before ip
+
+        return ((i < 0) || (ip > v4Ends[i])) ? -1 : v4Locations[i];
+    }
+
+    private int findV6(long hi, long lo) {
+        int low = 0;
+        int high = v6StartsHi.length - 1;
+        int found = -1; // last range starting at or before ip
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+
+            if (compareUnsigned(v6StartsHi[mid], v6StartsLo[mid], hi, lo) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else
+                high = mid - 1;
+        }
+
+        if ((found < 0) || (compareUnsigned(hi, lo, v6EndsHi[found], v6EndsLo[found]) > 0))
+            return -1;
+
+        return v6Locations[found];
+    }
+
+    private static int compareUnsigned(long hi1, long lo1, long hi2, long lo2) {
+        int hiCmp = Long.compareUnsigned(hi1, hi2);
+        return (hiCmp != 0) ? hiCmp : Long.compareUnsigned(lo1, lo2);
+    }
+
+    private static IOException overlap(CompactIP start1, CompactIP end1, CompactIP start2, CompactIP end2) {
+        return new IOException("overlapping ranges " + start1 + " - " + end1 + " and " + start2 + " - " + end2);
+    }
+
+    private static Integer[] sortedOrder(int n, Comparator<Integer> comparator) {
+        Integer[] order = new Integer[n];
+
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+
+        Arrays.sort(order, comparator);
+        return order;
+    }
+
+    /**
+     * Splits a CSV line into fields, handling double-quoted fields ("" is an escaped quote).
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"') {
+                    if ((i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+                        field.append('"');
+                        i++;
+                    } else
+                        quoted = false;
+                } else
+                    field.append(c);
+            } else if (c == '"')
+                quoted = true;
+            else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else
+                field.append(c);
+        }
+
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Accumulates parsed ranges and deduplicates locations while loading.
+     */
+    private static final class Loader {
+        private static final BigInteger MAX_IPV4 = BigInteger.valueOf(0xFFFFFFFFL);
+        private static final BigInteger LONG_MASK = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        private static final BigInteger MAX_IPV6 = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+        private static final CompactIP IPV4_MAPPED_FIRST = CompactIP.ofIPv4(0);
+        private static final CompactIP IPV4_MAPPED_LAST = CompactIP.ofIPv4(-1);
+        private static final CompactIP BEFORE_IPV4_MAPPED = CompactIP.ofIPv6(0L, 0xFFFEFFFFFFFFL);
+        private static final CompactIP AFTER_IPV4_MAPPED = CompactIP.ofIPv6(0L, 0x1000000000000L);
+
+        private final List<long[]> v4 = new ArrayList<>();
+        private final List<long[]> v6 = new ArrayList<>();
+
+        private final List<IPAddress> locations = new ArrayList<>();
+        private final Map<List<String>, Integer> locationIndexes = new HashMap<>();
+
+        void add(List<String> fields) {
+            if (fields.size() < 3)
+                throw new IllegalArgumentException("expected at least 3 columns, but got " + fields.size());
+
+            Object startBound = parseBound(fields.get(0));
+            Object endBound = parseBound(fields.get(1));
+
+            // E.g. "0" is 0.0.0.0 in an IPv4 database, but :: in an IPv6 one.
+            boolean ipv4Numbers = (!(isIPv6Literal(startBound))) && (!(isIPv6Literal(endBound)))
+                    && (fitsIPv4(startBound)) && (fitsIPv4(endBound));
+
+            CompactIP start = toIP(startBound, ipv4Numbers);
+            CompactIP end = toIP(endBound, ipv4Numbers);
+
+            if (start.compareTo(end) > 0)
+                throw new IllegalArgumentException("invalid range " + fields.get(0) + " - " + fields.get(1));
+
+            int location = location(fields.subList(2, fields.size()));
+
+            // Split the range into parts below, inside and above ::ffff:0:0/96 (IPv4).
+            if (start.compareTo(IPV4_MAPPED_FIRST) < 0)
+                addIPv6(start, min(end, BEFORE_IPV4_MAPPED), location);
+
+            if ((end.compareTo(IPV4_MAPPED_FIRST) >= 0) && (start.compareTo(IPV4_MAPPED_LAST) <= 0))
+                v4.add(new long[] { max(start, IPV4_MAPPED_FIRST).getIPv4() & 0xFFFFFFFFL,
+                        min(end, IPV4_MAPPED_LAST).getIPv4() & 0xFFFFFFFFL, location });
+
+            if (end.compareTo(IPV4_MAPPED_LAST) > 0)
+                addIPv6(max(start, AFTER_IPV4_MAPPED), end, location);
+        }
+
+        private void addIPv6(CompactIP start, CompactIP end, int location) {
+            v6.add(new long[] { start.getHigh(), start.getLow(), end.getHigh(), end.getLow(), location });
+        }
+
+        /**
+         * @return true if the specified CSV field is an IP literal or an unsigned decimal number.
+         */
+        static boolean isBound(String field) {
+            if (CompactIP.tryParse(field) != null)
+                return true;
+
+            if (field.isEmpty())
+                return false;
+
+            for (int i = 0; i < field.length(); i++)
+                if ((field.charAt(i) < '0') || (field.charAt(i) > '9'))
+                    return false;
+
+            return true;
+        }
+
+        /**
+         * @return a CompactIP (for IP literals) or a BigInteger (for decimal numbers).
+         */
+        private static Object parseBound(String bound) {
+            CompactIP ip = CompactIP.tryParse(bound);
+
+            if (ip != null)
+                return ip;
+
+            BigInteger number;
+
+            try {
+                number = new BigInteger(bound);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("invalid IP \"" + bound + "\"");
+            }
+
+            if ((number.signum() < 0) || (number.compareTo(MAX_IPV6) > 0))
+                throw new IllegalArgumentException("IP number out of range: " + bound);
+
+            return number;
+        }
+
+        private static boolean isIPv6Literal(Object bound) {
+            return (bound instanceof CompactIP) && (!(((CompactIP) bound).isIPv4()));
+        }
+
+        private static boolean fitsIPv4(Object bound) {
+            return (!(bound instanceof BigInteger)) || (((BigInteger) bound).compareTo(MAX_IPV4) <= 0);
+        }
+
+        private static CompactIP toIP(Object bound, boolean ipv4Numbers) {
+            if (bound instanceof CompactIP)
+                return (CompactIP) bound;
+
+            BigInteger number = (BigInteger) bound;
+
+            if (ipv4Numbers)
+                return CompactIP.ofIPv4(number.intValue());
+
+            return CompactIP.ofIPv6(number.shiftRight(64).longValue(), number.and(LONG_MASK).longValue());
+        }
+
+        private static CompactIP min(CompactIP a, CompactIP b) {
+            return (a.compareTo(b) <= 0) ? a : b;
+        }
+
+        private static CompactIP max(CompactIP a, CompactIP b) {
+            return (a.compareTo(b) >= 0) ? a : b;
+        }
+
+        private int location(List<String> columns) {
+            List<String> key = new ArrayList<>(columns);
+            Integer index = locationIndexes.get(key);
+
+            if (index != null)
+                return index;
+
+            IPAddress location = IPAddress.located(
+                    column(columns, 0), column(columns, 1), column(columns, 2), column(columns, 3),
+                    parseFloat(column(columns, 4)), parseFloat(column(columns, 5)), column(columns, 6));
+
+            index = locations.size();
+            locations.add(location);
+            locationIndexes.put(key, index);
+
+            return index;
+        }
+
+        private static String column(List<String> columns, int index) {
+            if (index >= columns.size())
+                return null;
+
+            String value = columns.get(index);
+            return ((value.isEmpty()) || (value.equals("-"))) ? null : value;
+        }
+
+        private static float parseFloat(String value) {
+            if (value == null)
+                return 0.0f;
+
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("invalid coordinate \"" + value + "\"");
+            }
+        }
+    }
+
+}
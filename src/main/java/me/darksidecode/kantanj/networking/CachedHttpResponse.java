@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response stored in an HttpCache along with its freshness information.
+ */
+final class CachedHttpResponse {
+
+    /**
+     * The full cache key, to detect hash collisions in the on-disk tier.
+     */
+    final String key;
+
+    final String url;
+
+    final int statusCode;
+
+    final LinkedHashMap<String, List<String>> headers;
+
+    final byte[] body;
+
+    /**
+     * This response is fresh (may be served without revalidation) until this moment.
+     */
+    final long expiresAtMillis;
+
+    CachedHttpResponse(String key, String url, int statusCode,
+                       Map<String, List<String>> headers, byte[] body, long expiresAtMillis) {
+        this.key = key;
+        this.url = url;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.expiresAtMillis = expiresAtMillis;
+        this.headers = new LinkedHashMap<>();
+
+        // Copy values to make sure they are not modified later.
+        headers.forEach((name, values) -> {
+            if (name != null)
+                this.headers.put(name, new ArrayList<>(values));
+        });
+    }
+
+    boolean isFresh(long nowMillis) {
+        return nowMillis < expiresAtMillis;
+    }
+
+    String getEtag() {
+        return firstHeader("ETag");
+    }
+
+    String getLastModified() {
+        return firstHeader("Last-Modified");
+    }
+
+    boolean hasValidators() {
+        return (getEtag() != null) || (getLastModified() != null);
+    }
+
+    private String firstHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet())
+            if ((header.getKey().equalsIgnoreCase(name)) && (!(header.getValue().isEmpty())))
+                return header.getValue().get(0);
+
+        return null;
+    }
+
+    /**
+     * @return a copy of this response with headers updated from a "304 Not Modified"
+     *         response to a conditional request, and with the specified new freshness.
+     */
+    CachedHttpResponse revalidated(Map<String, List<String>> notModifiedHeaders, long expiresAtMillis) {
+        Map<String, List<String>> merged = new LinkedHashMap<>(headers);
+
+        notModifiedHeaders.forEach((name, values) -> {
+            if ((name == null) || (name.equalsIgnoreCase("Content-Length"))
+                    || (name.equalsIgnoreCase("Content-Encoding"))
+                    || (name.equalsIgnoreCase("Transfer-Encoding")))
+                return; // these describe the (empty) 304 body, not the cached one
+
+            merged.keySet().removeIf(name::equalsIgnoreCase);
+            merged.put(name, values);
+        });
+
+        return new CachedHttpResponse(key, url, statusCode, merged, body, expiresAtMillis);
+    }
+
+    /**
+     * @return approximate memory footprint of this response, in bytes.
+     */
+    int weight() {
+        long weight = body.length + 2L * (key.length() + url.length());
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += 2L * header.getKey().length();
+
+            for (String value : header.getValue())
+                weight += 2L * value.length();
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    StreamedHttpResponse toStreamed() {
+        return new StreamedHttpResponse(url, statusCode, headers, new ByteArrayInputStream(body), null);
+    }
+
+}
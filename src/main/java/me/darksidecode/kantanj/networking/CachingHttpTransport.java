@@ -0,0 +1,359 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An HttpTransport decorator caching responses to GET requests in an HttpCache.
+ *
+ * Honors Cache-Control (no-store, no-cache, max-age) and Expires response headers.
+ * Stale responses with validators (ETag, Last-Modified) are revalidated using
+ * conditional requests (If-None-Match, If-Modified-Since), so that unchanged
+ * content is not transferred again. Requests with "Cache-Control: no-cache",
+ * "Cache-Control: max-age=0" or "Pragma: no-cache" always revalidate cached responses.
+ *
+ * Only responses that are going to be stored are read into memory; all other ones
+ * (errors, no-store, etc.) are streamed to the caller as they are.
+ *
+ * Responses are cached by the request URL plus the values of "relevant" request
+ * headers, i.e. headers that may affect the response content (see DEFAULT_KEY_HEADERS).
+ * Responses with "Vary: *" are never cached.
+ *
+ * Usage: Networking.Http.setTransport(new CachingHttpTransport(
+ *            Networking.Http.getTransport(), new HttpCache(...)));
+ */
+public class CachingHttpTransport implements HttpTransport {
+
+    public static final Set<String> DEFAULT_KEY_HEADERS = Collections.unmodifiableSet(new TreeSet<>(
+            Arrays.asList("Accept", "Accept-Language", "Authorization", "Cookie")));
+
+    private static final long NOT_CACHEABLE = -1;
+
+    private final HttpTransport delegate;
+
+    private final HttpCache cache;
+
+    private final Set<String> keyHeaders;
+
+    public CachingHttpTransport(HttpTransport delegate, HttpCache cache) {
+        this(delegate, cache, DEFAULT_KEY_HEADERS);
+    }
+
+    /**
+     * @param keyHeaders names of request headers whose values are a part of the cache key.
+     */
+    public CachingHttpTransport(HttpTransport delegate, HttpCache cache, Collection<String> keyHeaders) {
+        this.delegate = Check.notNull(delegate, "delegate cannot be null");
+        this.cache = Check.notNull(cache, "cache cannot be null");
+
+        Set<String> headers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        headers.addAll(Check.notNull(keyHeaders, "keyHeaders cannot be null"));
+        this.keyHeaders = Collections.unmodifiableSet(headers);
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        if (!(isCacheable(request)))
+            return delegate.open(request);
+
+        String key = cacheKey(request);
+        CachedHttpResponse cached = cache.get(key);
+
+        if ((cached != null) && (cached.isFresh(System.currentTimeMillis())) && (!(requiresRevalidation(request)))) {
+            cache.hit();
+            return cached.toStreamed();
+        }
+
+        HttpRequest actualRequest = ((cached != null) && (cached.hasValidators()))
+                ? new ConditionalHttpRequest(request, cached) : request;
+
+        StreamedHttpResponse response = delegate.open(actualRequest);
+        boolean streamedToCaller = false;
+
+        try {
+            long now = System.currentTimeMillis();
+
+            if ((response.getStatusCode() == 304) && (actualRequest != request)) {
+                long expiresAt = expiresAt(response.getHeaders(), now);
+                CachedHttpResponse revalidated = cached.revalidated(
+                        response.getHeaders(), Math.max(expiresAt, now));
+
+                if (expiresAt != NOT_CACHEABLE)
+                    cache.put(revalidated);
+                else
+                    cache.remove(key); // the server no longer allows storing it
+
+                cache.revalidated();
+                return revalidated.toStreamed();
+            }
+
+            cache.miss();
+
+            if (response.getStatusCode() == 200) {
+                // Decide from the headers alone, so that the body is only buffered if it will be stored.
+                long expiresAt = expiresAt(response.getHeaders(), now);
+                boolean hasValidators = (response.getHeader("ETag") != null)
+                        || (response.getHeader("Last-Modified") != null);
+
+                if ((expiresAt != NOT_CACHEABLE) && (!("*".equals(response.getHeader("Vary"))))
+                        && ((expiresAt > now) || (hasValidators))) {
+                    HttpResponse full = response.readFully();
+                    cache.put(new CachedHttpResponse(key, full.getUrl(),
+                            full.getStatusCode(), full.getHeaders(), full.getBody(), expiresAt));
+
+                    return full.toStreamed();
+                }
+            }
+
+            // The fresh response replaces the cached one, but is not stored itself (e.g. no-store),
+            // so the old entry and its validators must not be used for any further requests.
+            // Server errors say nothing about the resource, though.
+            if ((cached != null) && (response.getStatusCode() < 500))
+                cache.remove(key);
+
+            streamedToCaller = true;
+            return response;
+        } finally {
+            if (!(streamedToCaller))
+                response.close();
+        }
+    }
+
+    /**
+     * @return true if the specified request forbids serving cached responses without revalidation.
+     */
+    private static boolean requiresRevalidation(HttpRequest request) {
+        for (Map.Entry<String, String> prop : request.getRequestProperties().entrySet()) {
+            String name = prop.getKey();
+            boolean cacheControl = name.equalsIgnoreCase("Cache-Control");
+
+            if ((cacheControl) || (name.equalsIgnoreCase("Pragma"))) {
+                for (String directive : prop.getValue().split(",")) {
+                    directive = directive.trim().toLowerCase();
+
+                    if ((directive.equals("no-cache")) || ((cacheControl) && (directive.equals("max-age=0"))))
+                        return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return delegate.getStats();
+    }
+
+    private static boolean isCacheable(HttpRequest request) {
+        if (request.getRequestMethod() != RequestMethod.GET)
+            return false;
+
+        for (Map.Entry<String, String> prop : request.getRequestProperties().entrySet()) {
+            String name = prop.getKey();
+
+            if ((name.equalsIgnoreCase("If-None-Match")) || (name.equalsIgnoreCase("If-Modified-Since")))
+                return false; // the caller does conditional requests on its own
+
+            if ((name.equalsIgnoreCase("Cache-Control")) && (prop.getValue().contains("no-store")))
+                return false;
+        }
+
+        return true;
+    }
+
+    private String cacheKey(HttpRequest request) {
+        StringBuilder key = new StringBuilder(request.getURL());
+
+        // keyHeaders is a sorted set, so the key does not depend on the order of request properties.
+        for (String header : keyHeaders)
+            for (Map.Entry<String, String> prop : request.getRequestProperties().entrySet())
+                if (prop.getKey().equalsIgnoreCase(header))
+                    key.append('\n').append(header).append(": ").append(prop.getValue());
+
+        return key.toString();
+    }
+
+    /**
+     * @return the moment the response with the specified headers stops being
+     *         fresh, or NOT_CACHEABLE if it must not be stored at all.
+     */
+    static long expiresAt(Map<String, List<String>> headers, long nowMillis) {
+        List<String> cacheControl = headers.get("Cache-Control");
+
+        if (cacheControl != null) {
+            long maxAgeSeconds = -1;
+
+            for (String value : cacheControl) {
+                for (String directive : value.split(",")) {
+                    directive = directive.trim().toLowerCase();
+
+                    if (directive.equals("no-store"))
+                        return NOT_CACHEABLE;
+
+                    if (directive.equals("no-cache"))
+                        return nowMillis; // may be stored, but must always be revalidated
+
+                    if (directive.startsWith("max-age=")) {
+                        try {
+                            maxAgeSeconds = Long.parseLong(directive.substring(8).replace("\"", ""));
+                        } catch (NumberFormatException ex) {
+                            return nowMillis;
+                        }
+                    }
+                }
+            }
+
+            if (maxAgeSeconds >= 0)
+                return nowMillis + (maxAgeSeconds - parseAgeSeconds(headers)) * 1000L;
+        }
+
+        List<String> expires = headers.get("Expires");
+
+        if ((expires != null) && (!(expires.isEmpty()))) {
+            long expiresMillis = parseHttpDate(expires.get(0));
+
+            if (expiresMillis < 0)
+                return nowMillis; // invalid dates (e.g. "0") mean "already expired"
+
+            List<String> date = headers.get("Date");
+            long dateMillis = ((date != null) && (!(date.isEmpty()))) ? parseHttpDate(date.get(0)) : -1;
+
+            // Use the server's clock to avoid issues with clock skew.
+            return nowMillis + expiresMillis - ((dateMillis >= 0) ? dateMillis : nowMillis);
+        }
+
+        return nowMillis; // no freshness information - always revalidate
+    }
+
+    private static long parseAgeSeconds(Map<String, List<String>> headers) {
+        List<String> age = headers.get("Age");
+
+        if ((age == null) || (age.isEmpty()))
+            return 0;
+
+        try {
+            return Math.max(0, Long.parseLong(age.get(0).trim()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the specified RFC 1123 date in milliseconds since the epoch, or -1 if it is invalid.
+     */
+    static long parseHttpDate(String date) {
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * A GET request with validators of a cached response added.
+     */
+    private static final class ConditionalHttpRequest implements HttpRequest {
+        private final HttpRequest original;
+        private final Map<String, String> requestProperties;
+
+        private ConditionalHttpRequest(HttpRequest original, CachedHttpResponse cached) {
+            this.original = original;
+            this.requestProperties = new HashMap<>(original.getRequestProperties());
+
+            if (cached.getEtag() != null)
+                requestProperties.put("If-None-Match", cached.getEtag());
+
+            if (cached.getLastModified() != null)
+                requestProperties.put("If-Modified-Since", cached.getLastModified());
+        }
+
+        @Override
+        public String getUserAgent() {
+            return original.getUserAgent();
+        }
+
+        @Override
+        public RequestMethod getRequestMethod() {
+            return original.getRequestMethod();
+        }
+
+        @Override
+        public boolean isSecured() {
+            return original.isSecured();
+        }
+
+        @Override
+        public Map<String, String> getRequestProperties() {
+            return requestProperties;
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return original.getConnectTimeout();
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return original.getReadTimeout();
+        }
+
+        @Override
+        public boolean shouldFollowRedirects() {
+            return original.shouldFollowRedirects();
+        }
+
+        @Override
+        public boolean shouldDoInput() {
+            return original.shouldDoInput();
+        }
+
+        @Override
+        public boolean shouldDoOutput() {
+            return original.shouldDoOutput();
+        }
+
+        @Override
+        public boolean shouldAcceptCompressed() {
+            return original.shouldAcceptCompressed();
+        }
+
+        @Override
+        public String getURL() {
+            return original.getURL();
+        }
+    }
+
+}
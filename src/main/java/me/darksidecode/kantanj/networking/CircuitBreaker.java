@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+/**
+ * A per-host circuit breaker used by ResilientHttpTransport.
+ *
+ * After `failureThreshold` consecutive failures the circuit "opens", and all requests
+ * to the host fail fast with a CircuitBreakerOpenException for `openTimeMillis`, without
+ * occupying a thread or a connection. After that, a single trial request is let
+ * through ("half-open" state): if it succeeds, the circuit closes again; otherwise,
+ * it stays open for another `openTimeMillis`.
+ *
+ * Failures are I/O errors and 5xx responses. Other responses count as successes.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openTimeMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long openTimeMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openTimeMillis = openTimeMillis;
+    }
+
+    /**
+     * @return true if a request may be sent now, false if it must be rejected.
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+
+            case OPEN:
+                if (System.currentTimeMillis() - openedAtMillis < openTimeMillis)
+                    return false;
+
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+
+                return true;
+
+            default: // HALF_OPEN
+                if (trialInFlight)
+                    return false;
+
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+
+        if ((state == State.HALF_OPEN) || (consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Called if a request was let through, but its outcome says nothing about
+     * the host's health (e.g. the request itself was invalid).
+     */
+    synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+}
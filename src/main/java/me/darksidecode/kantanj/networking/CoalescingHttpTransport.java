@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An HttpTransport decorator implementing "single-flight" request coalescing:
+ * concurrent identical GET requests (same URL, User-Agent, request properties,
+ * timeouts and redirect policy) share one in-flight request to the server, and all
+ * of them receive its result (or its failure). Requests with other methods are
+ * passed through as is.
+ *
+ * Responses of coalesced requests are fully read into memory once and shared.
+ *
+ * Usage: Networking.Http.setTransport(new CoalescingHttpTransport(
+ *            Networking.Http.getTransport()));
+ */
+public class CoalescingHttpTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+
+    private final Map<String, CompletableFuture<HttpResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    public CoalescingHttpTransport(HttpTransport delegate) {
+        this.delegate = Check.notNull(delegate, "delegate cannot be null");
+    }
+
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        if (request.getRequestMethod() != RequestMethod.GET)
+            return delegate.open(request);
+
+        return execute(request).toStreamed();
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (request.getRequestMethod() != RequestMethod.GET)
+            return delegate.execute(request);
+
+        String key = key(request);
+        CompletableFuture<HttpResponse> leader = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> existing = inFlight.putIfAbsent(key, leader);
+
+        if (existing != null) {
+            coalescedRequests.increment();
+            return await(existing);
+        }
+
+        try {
+            HttpResponse response = delegate.execute(request);
+            leader.complete(response);
+
+            return response;
+        } catch (IOException | RuntimeException | Error ex) {
+            leader.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, Executor executor) {
+        if (request.getRequestMethod() != RequestMethod.GET)
+            return delegate.executeAsync(request, executor);
+
+        String key = key(request);
+        CompletableFuture<HttpResponse> leader = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> existing = inFlight.putIfAbsent(key, leader);
+
+        if (existing != null) {
+            coalescedRequests.increment();
+            return existing.thenApply(response -> response); // don't let callers complete the shared future
+        }
+
+        CompletableFuture<HttpResponse> delegated;
+
+        try {
+            delegated = delegate.executeAsync(request, executor);
+        } catch (RuntimeException | Error ex) {
+            // E.g. a rejected executor - fail the requests that have already joined this one, too.
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(ex);
+
+            throw ex;
+        }
+
+        delegated.whenComplete((response, t) -> {
+            inFlight.remove(key, leader);
+
+            if (t != null)
+                leader.completeExceptionally((t instanceof CompletionException) ? t.getCause() : t);
+            else
+                leader.complete(response);
+        });
+
+        return leader.thenApply(response -> response);
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return delegate.getStats();
+    }
+
+    /**
+     * @return number of requests that did not reach the server, but were
+     *         served with the result of an identical in-flight request instead.
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    private static String key(HttpRequest request) {
+        StringBuilder key = new StringBuilder(request.getURL()).
+                append('\n').append(request.getUserAgent()).
+                append('\n').append(request.shouldAcceptCompressed()).
+                append('\n').append(request.shouldFollowRedirects()).
+                append('\n').append(request.getConnectTimeout()).
+                append('\n').append(request.getReadTimeout());
+
+        // Sort to make sure the key does not depend on the order of request properties.
+        new TreeMap<>(request.getRequestProperties()).forEach((name, value) ->
+                key.append('\n').append(name).append(": ").append(value));
+
+        return key.toString();
+    }
+
+    private static HttpResponse await(CompletableFuture<HttpResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a coalesced request");
+        } catch (ExecutionException ex) {
+            throw new IOException("coalesced request failed", ex.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A compact, immutable IPv4 or IPv6 address, e.g. for use as a map or cache key.
+ * Stores the address as two longs (128 bits); IPv4 addresses are stored as
+ * IPv4-mapped IPv6 addresses (::ffff:a.b.c.d), and are thus considered equal to them.
+ *
+ * Parsing never performs DNS lookups (unlike InetAddress#getByName) and does not
+ * allocate anything but the resulting object.
+ */
+public final class CompactIP implements Comparable<CompactIP>, Serializable {
+
+    private static final long serialVersionUID = 6154926531087302410L;
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFF00000000L;
+    private static final long IPV4_MAPPED_MASK = 0xFFFFFFFF00000000L;
+
+    /**
+     * High and low 64 bits of the address.
+     */
+    private final long high, low;
+
+    private CompactIP(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param high high 64 bits of an IPv6 address.
+     * @param low low 64 bits of an IPv6 address.
+     */
+    public static CompactIP ofIPv6(long high, long low) {
+        return new CompactIP(high, low);
+    }
+
+    /**
+     * @param ipv4 IPv4 address as a 32-bit number (e.g. 0x7F000001 for 127.0.0.1).
+     */
+    public static CompactIP ofIPv4(int ipv4) {
+        return new CompactIP(0L, IPV4_MAPPED_PREFIX | (ipv4 & 0xFFFFFFFFL));
+    }
+
+    public static CompactIP of(InetAddress address) {
+        byte[] bytes = Check.notNull(address, "address cannot be null").getAddress();
+
+        if (bytes.length == 4)
+            return ofIPv4(((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16)
+                    | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF));
+
+        long high = 0;
+        long low = 0;
+
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[i + 8] & 0xFF);
+        }
+
+        return new CompactIP(high, low);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified string is not an IPv4 or IPv6 literal.
+     */
+    public static CompactIP parse(CharSequence s) {
+        CompactIP ip = tryParse(s);
+
+        if (ip == null)
+            throw new IllegalArgumentException("not an IP address: " + s);
+
+        return ip;
+    }
+
+    /**
+     * @return the specified IPv4 or IPv6 literal (an IPv6 zone ID, if any, is ignored),
+     *         or null if the specified string is not one.
+     */
+    public static CompactIP tryParse(CharSequence s) {
+        Check.notNull(s, "s cannot be null");
+        long ipv4 = parseIPv4(s, 0, s.length());
+
+        return (ipv4 >= 0) ? new CompactIP(0L, IPV4_MAPPED_PREFIX | ipv4) : parseIPv6(s, 0, s.length());
+    }
+
+    /**
+     * @return the IPv4 literal at the specified range of the specified string
+     *         as an unsigned 32-bit number, or -1 if there's no valid IPv4 literal.
+     */
+    public static long parseIPv4(CharSequence s, int from, int to) {
+        int length = to - from;
+
+        if ((length < 7) || (length > 15))
+            return -1;
+
+        long result = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+
+            if ((c >= '0') && (c <= '9')) {
+                if ((digits > 0) && (octet == 0))
+                    return -1; // leading zeros are ambiguous (octal)
+
+                octet = octet * 10 + (c - '0');
+
+                if ((++digits > 3) || (octet > 255))
+                    return -1;
+            } else if ((c == '.') && (digits > 0) && (dots < 3)) {
+                result = (result << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else
+                return -1;
+        }
+
+        if ((dots != 3) || (digits == 0))
+            return -1;
+
+        return (result << 8) | octet;
+    }
+
+    private static CompactIP parseIPv6(CharSequence s, int from, int to) {
+        int end = to;
+
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '%') {
+                end = i; // zone ID
+                break;
+            }
+        }
+
+        if (end - from < 2)
+            return null;
+
+        // Groups before "::" (or all groups, if there's no "::") and after it.
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int groups = 0;
+        int headGroups = 0;
+        boolean compressed = false;
+        int i = from;
+
+        if (s.charAt(i) == ':') {
+            if (s.charAt(i + 1) != ':')
+                return null;
+
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+            int digit;
+
+            while ((i < end) && (i - groupStart < 4) && ((digit = hexDigit(s.charAt(i))) != -1)) {
+                value = (value << 4) | digit;
+                i++;
+            }
+
+            int bits;
+            long bitsValue;
+
+            if ((i < end) && (s.charAt(i) == '.')) {
+                // Embedded IPv4 (e.g. "::ffff:1.2.3.4") - takes the last two groups.
+                bitsValue = parseIPv4(s, groupStart, end);
+
+                if ((bitsValue < 0) || (groups > 6))
+                    return null;
+
+                bits = 32;
+                i = end;
+            } else {
+                if ((i == groupStart) || (groups == 8))
+                    return null; // empty or invalid group, or too many groups
+
+                bits = 16;
+                bitsValue = value;
+            }
+
+            if (compressed) {
+                tailHigh = (tailHigh << bits) | (tailLow >>> (64 - bits));
+                tailLow = (tailLow << bits) | bitsValue;
+            } else {
+                headHigh = (headHigh << bits) | (headLow >>> (64 - bits));
+                headLow = (headLow << bits) | bitsValue;
+                headGroups += bits / 16;
+            }
+
+            groups += bits / 16;
+
+            if (i == end)
+                break;
+
+            if (s.charAt(i) != ':')
+                return null;
+
+            i++;
+
+            if ((i < end) && (s.charAt(i) == ':')) {
+                if (compressed)
+                    return null; // "::" may only occur once
+
+                compressed = true;
+                i++;
+            } else if (i == end)
+                return null; // trailing single ':'
+        }
+
+        if (!(compressed))
+            return (groups == 8) ? new CompactIP(headHigh, headLow) : null;
+
+        if (groups > 7)
+            return null;
+
+        // Move the head groups to the top, leaving zeros in place of "::".
+        int shift = 16 * (8 - headGroups);
+
+        if (shift >= 128) {
+            headHigh = 0;
+            headLow = 0;
+        } else if (shift >= 64) {
+            headHigh = headLow << (shift - 64);
+            headLow = 0;
+        } else {
+            headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+            headLow <<= shift;
+        }
+
+        return new CompactIP(headHigh | tailHigh, headLow | tailLow);
+    }
+
+    private static int hexDigit(char c) {
+        if ((c >= '0') && (c <= '9'))
+            return c - '0';
+
+        if ((c >= 'a') && (c <= 'f'))
+            return c - 'a' + 10;
+
+        if ((c >= 'A') && (c <= 'F'))
+            return c - 'A' + 10;
+
+        return -1;
+    }
+
+    /**
+     * @return true if this is an IPv4 (or an IPv4-mapped IPv6) address.
+     */
+    public boolean isIPv4() {
+        return (high == 0L) && ((low & IPV4_MAPPED_MASK) == IPV4_MAPPED_PREFIX);
+    }
+
+    /**
+     * @return this IPv4 address as a 32-bit number.
+     *
+     * @throws IllegalStateException if this is not an IPv4 address.
+     */
+    public int getIPv4() {
+        Check.state(!(isIPv4()), "not an IPv4 address");
+        return (int) low;
+    }
+
+    /**
+     * @return high 64 bits of this address (as an IPv6 address).
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return low 64 bits of this address (as an IPv6 address).
+     */
+    public long getLow() {
+        return low;
+    }
+
+    public InetAddress toInetAddress() {
+        byte[] bytes;
+
+        if (isIPv4()) {
+            int ipv4 = (int) low;
+            bytes = new byte[] { (byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4 };
+        } else {
+            bytes = new byte[16];
+
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (high >>> (56 - i * 8));
+                bytes[i + 8] = (byte) (low >>> (56 - i * 8));
+            }
+        }
+
+        try {
+            return InetAddress.getByAddress(bytes); // no DNS lookup
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException("unexpected address length", ex);
+        }
+    }
+
+    @Override
+    public int compareTo(CompactIP other) {
+        int highCmp = Long.compareUnsigned(high, other.high);
+        return (highCmp != 0) ? highCmp : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof CompactIP))
+            return false;
+
+        CompactIP other = (CompactIP) obj;
+        return (high == other.high) && (low == other.low);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(high) + Long.hashCode(low);
+    }
+
+    /**
+     * @return dotted notation for IPv4 addresses, and the canonical
+     *         (RFC 5952) textual representation for IPv6 addresses.
+     */
+    @Override
+    public String toString() {
+        if (isIPv4()) {
+            int ipv4 = (int) low;
+            return (ipv4 >>> 24) + "." + ((ipv4 >>> 16) & 0xFF) + "." + ((ipv4 >>> 8) & 0xFF) + "." + (ipv4 & 0xFF);
+        }
+
+        int[] groups = new int[8];
+
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (high >>> (48 - i * 16)) & 0xFFFF;
+            groups[i + 4] = (int) (low >>> (48 - i * 16)) & 0xFFFF;
+        }
+
+        // Find the longest run of (at least two) zero groups to replace with "::".
+        int bestStart = -1, bestLength = 1;
+
+        for (int i = 0; i < 8; i++) {
+            int length = 0;
+
+            while ((i + length < 8) && (groups[i + length] == 0))
+                length++;
+
+            if (length > bestLength) {
+                bestStart = i;
+                bestLength = length;
+            }
+
+            i += length;
+        }
+
+        StringBuilder s = new StringBuilder(39);
+
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                s.append("::");
+                i += bestLength - 1;
+            } else {
+                if ((s.length() > 0) && (s.charAt(s.length() - 1) != ':'))
+                    s.append(':');
+
+                s.append(Integer.toHexString(groups[i]));
+            }
+        }
+
+        return s.toString();
+    }
+
+}
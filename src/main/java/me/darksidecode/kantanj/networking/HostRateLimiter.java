@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound limits of a single host used by RateLimitingHttpTransport:
+ * a token bucket (rate limit with bursts), an optional cap on the number
+ * of concurrent requests, and a "pause" set when the host asks to slow
+ * down (429 Too Many Requests, Retry-After).
+ *
+ * If adaptive, the rate is halved each time the host asks to slow down,
+ * and then gradually (additively) restored with each successful response,
+ * up to the configured maximum rate.
+ */
+public class HostRateLimiter {
+
+    /**
+     * The rate never goes below this fraction of the configured maximum rate.
+     */
+    private static final double MIN_RATE_FRACTION = 0.05;
+
+    /**
+     * Each successful response increases the rate by this fraction of the maximum rate.
+     */
+    private static final double RECOVERY_FRACTION = 0.05;
+
+    /**
+     * Longest pause a host may ask for. Also keeps `now + pause` from overflowing.
+     */
+    static final long MAX_PAUSE_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private final double maxRatePerSecond;
+    private final double burst;
+    private final boolean adaptive;
+    private final int maxConcurrentRequests;
+    private final Semaphore concurrency;
+
+    private double ratePerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    HostRateLimiter(double maxRatePerSecond, int burst, int maxConcurrentRequests, boolean adaptive) {
+        this.maxRatePerSecond = maxRatePerSecond;
+        this.burst = burst;
+        this.adaptive = adaptive;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.concurrency = (maxConcurrentRequests > 0) ? new Semaphore(maxConcurrentRequests, true) : null;
+
+        this.ratePerSecond = maxRatePerSecond;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Wait (at most `timeoutNanos`) until a request to this host may be sent.
+     *
+     * @return true if the request may be sent now (in this case, release() must be
+     *         called once it completes), false if it could not be allowed in time.
+     */
+    boolean acquire(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long waitNanos = reserve(timeoutNanos);
+
+        if (waitNanos < 0)
+            return false;
+
+        boolean acquired = false;
+
+        try {
+            if (waitNanos > 0)
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+
+            acquired = (concurrency == null) || (concurrency.tryAcquire(
+                    Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+
+            return acquired;
+        } finally {
+            if (!(acquired))
+                refund(); // the request is not sent, so it must not consume rate budget
+        }
+    }
+
+    void release() {
+        if (concurrency != null)
+            concurrency.release();
+    }
+
+    /**
+     * Take a token from the bucket, possibly "in advance".
+     *
+     * @return how long to wait before sending the request in nanoseconds,
+     *         or -1 (no token taken) if that would take more than `maxWaitNanos`.
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        refill(now);
+
+        long waitNanos = Math.max(0, pausedUntilNanos - now);
+
+        if (tokens < 1.0)
+            waitNanos = Math.max(waitNanos, (long) Math.ceil((1.0 - tokens) / ratePerSecond * 1e9));
+
+        if (waitNanos > maxWaitNanos)
+            return -1;
+
+        tokens -= 1.0; // may go negative, which makes subsequent requests wait longer
+        return waitNanos;
+    }
+
+    /**
+     * Give back a token taken by reserve(long) for a request that was not sent after all.
+     */
+    private synchronized void refund() {
+        tokens = Math.min(burst, tokens + 1.0);
+    }
+
+    private void refill(long now) {
+        // Tokens do not accumulate while the host asked us to pause.
+        long from = Math.max(lastRefillNanos, Math.min(now, pausedUntilNanos));
+
+        if (now > from)
+            tokens = Math.min(burst, tokens + (now - from) / 1e9 * ratePerSecond);
+
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Called when the host responds with 429 Too Many Requests (or with a Retry-After header).
+     *
+     * @param retryAfterNanos for how long no requests should be sent to this host
+     *                        (capped at MAX_PAUSE_NANOS).
+     */
+    synchronized void onThrottled(long retryAfterNanos) {
+        long now = System.nanoTime();
+        refill(now);
+
+        retryAfterNanos = Math.max(0, Math.min(retryAfterNanos, MAX_PAUSE_NANOS));
+
+        if (now + retryAfterNanos - pausedUntilNanos > 0)
+            pausedUntilNanos = now + retryAfterNanos;
+
+        if (adaptive) {
+            ratePerSecond = Math.max(maxRatePerSecond * MIN_RATE_FRACTION, ratePerSecond / 2.0);
+            tokens = Math.min(tokens, 0.0); // drop the burst allowance
+        }
+    }
+
+    synchronized void onSuccess() {
+        if ((adaptive) && (ratePerSecond < maxRatePerSecond)) {
+            refill(System.nanoTime());
+            ratePerSecond = Math.min(maxRatePerSecond, ratePerSecond + maxRatePerSecond * RECOVERY_FRACTION);
+        }
+    }
+
+    /**
+     * @return current (possibly reduced, if adaptive) rate limit, in requests per second.
+     */
+    public synchronized double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @return for how long requests to this host are paused because of a
+     *         Retry-After header, in milliseconds (0 if they are not).
+     */
+    public synchronized long getPausedMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return number of requests to this host currently in flight,
+     *         or -1 if concurrency of requests is not limited.
+     */
+    public int getRequestsInFlight() {
+        return (concurrency == null) ? -1 : maxConcurrentRequests - concurrency.availablePermits();
+    }
+
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import me.darksidecode.kantanj.formatting.Hash;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage for responses cached by CachingHttpTransport: a memory-bounded
+ * in-memory tier and an optional on-disk tier surviving restarts.
+ *
+ * The on-disk tier keeps one file per response in the specified directory and
+ * is only used as a fallback on in-memory misses. Files use a plain binary format
+ * (no Java serialization, so nothing but strings and bytes is ever read from disk).
+ * Once the total size of the files exceeds the limit, expired entries that cannot
+ * be revalidated are deleted first, and then the least recently written ones.
+ * Use clear() to wipe it completely.
+ *
+ * @see CachingHttpTransport
+ */
+public class HttpCache {
+
+    private static final String FILE_EXTENSION = ".httpcache";
+
+    /**
+     * "KHC" + format version.
+     */
+    private static final int FILE_MAGIC = 0x4B484301;
+
+    public static final long DEFAULT_MAX_DISK_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * When over the limit, entries are deleted until the total size is below this fraction of it.
+     */
+    private static final double DISK_CLEANUP_TARGET = 0.9;
+
+    private final Cache<String, CachedHttpResponse> memory;
+
+    private final File diskDirectory;
+
+    private final long maxDiskBytes;
+
+    /**
+     * Approximate total size of the files in the on-disk tier.
+     */
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final Object diskCleanupLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * Create a memory-only cache.
+     *
+     * @param maxMemoryBytes approximate maximum total size of cached responses in memory.
+     */
+    public HttpCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null);
+    }
+
+    /**
+     * @param maxMemoryBytes approximate maximum total size of cached responses in memory.
+     * @param diskDirectory directory to store cached responses on disk in, or null to
+     *                      only keep them in memory. Created if it does not exist.
+     *                      At most DEFAULT_MAX_DISK_BYTES are stored there.
+     */
+    public HttpCache(long maxMemoryBytes, File diskDirectory) {
+        this(maxMemoryBytes, diskDirectory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * @param maxMemoryBytes approximate maximum total size of cached responses in memory.
+     * @param diskDirectory directory to store cached responses on disk in, or null to
+     *                      only keep them in memory. Created if it does not exist.
+     * @param maxDiskBytes approximate maximum total size of cached responses on disk.
+     */
+    public HttpCache(long maxMemoryBytes, File diskDirectory, long maxDiskBytes) {
+        if (maxMemoryBytes < 1)
+            throw new IllegalArgumentException("maxMemoryBytes must be a positive number");
+
+        if (maxDiskBytes < 1)
+            throw new IllegalArgumentException("maxDiskBytes must be a positive number");
+
+        if ((diskDirectory != null) && (!(diskDirectory.isDirectory())) && (!(diskDirectory.mkdirs())))
+            throw new IllegalArgumentException("failed to create cache directory " + diskDirectory.getAbsolutePath());
+
+        this.diskDirectory = diskDirectory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = CacheBuilder.newBuilder().
+                maximumWeight(maxMemoryBytes).
+                weigher((String key, CachedHttpResponse response) -> response.weight()).
+                build();
+
+        if (diskDirectory != null)
+            cleanUp(); // also computes the current size of the on-disk tier
+    }
+
+    CachedHttpResponse get(String key) {
+        CachedHttpResponse response = memory.getIfPresent(key);
+
+        if ((response == null) && (diskDirectory != null)) {
+            response = readFromDisk(key);
+
+            if (response != null)
+                memory.put(key, response);
+        }
+
+        return response;
+    }
+
+    void put(CachedHttpResponse response) {
+        memory.put(response.key, response);
+
+        if (diskDirectory != null)
+            writeToDisk(response);
+    }
+
+    /**
+     * Remove the response cached under the specified key (if any), both from memory and from disk.
+     */
+    void remove(String key) {
+        memory.invalidate(key);
+
+        if (diskDirectory != null) {
+            File file = diskFile(key);
+
+            if (file.isFile())
+                delete(file);
+        }
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void revalidated() {
+        revalidations.increment();
+    }
+
+    /**
+     * @return number of requests served from the cache without contacting the server.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of cacheable requests that required a full response from the server.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of requests served from the cache after the server
+     *         confirmed the cached response is still valid (304 Not Modified).
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return number of responses currently cached in memory.
+     */
+    public long size() {
+        return memory.size();
+    }
+
+    /**
+     * @return approximate total size of responses cached on disk, in bytes.
+     */
+    public long getDiskSize() {
+        return diskBytes.get();
+    }
+
+    /**
+     * Delete corrupted entries and expired entries that cannot be revalidated from disk,
+     * and then delete the least recently written ones if the total size is still over the
+     * limit. Done automatically on creation and whenever the limit is exceeded.
+     */
+    public void cleanUp() {
+        if (diskDirectory == null)
+            return;
+
+        synchronized (diskCleanupLock) {
+            File[] files = diskDirectory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+
+            if (files == null)
+                return;
+
+            long now = System.currentTimeMillis();
+            long total = 0;
+            List<File> kept = new ArrayList<>(files.length);
+
+            for (File file : files) {
+                if (isUseless(file, now))
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                else {
+                    total += file.length();
+                    kept.add(file);
+                }
+            }
+
+            if (total > maxDiskBytes) {
+                long target = (long) (maxDiskBytes * DISK_CLEANUP_TARGET);
+                kept.sort(Comparator.comparingLong(File::lastModified));
+
+                for (File file : kept) {
+                    if (total <= target)
+                        break;
+
+                    long length = file.length();
+
+                    if (file.delete())
+                        total -= length;
+                }
+            }
+
+            diskBytes.set(total);
+        }
+    }
+
+    /**
+     * Remove all cached responses, both from memory and from disk.
+     */
+    public void clear() {
+        memory.invalidateAll();
+
+        if (diskDirectory != null) {
+            synchronized (diskCleanupLock) {
+                File[] files = diskDirectory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+
+                if (files != null)
+                    for (File file : files)
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+
+                diskBytes.set(0);
+            }
+        }
+    }
+
+    private File diskFile(String key) {
+        return new File(diskDirectory, Hash.SHA256.checksumString(key, StandardCharsets.UTF_8) + FILE_EXTENSION);
+    }
+
+    private CachedHttpResponse readFromDisk(String key) {
+        File file = diskFile(key);
+
+        if (!(file.isFile()))
+            return null;
+
+        CachedHttpResponse response;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            response = read(in, file.length());
+        } catch (IOException | RuntimeException ex) {
+            response = null;
+        }
+
+        if (response == null) {
+            // Corrupted or incompatible entry - the disk tier is best-effort only.
+            delete(file);
+            return null;
+        }
+
+        return (key.equals(response.key)) ? response : null; // hash collision otherwise
+    }
+
+    private void writeToDisk(CachedHttpResponse response) {
+        Path target = diskFile(response.key).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + "~");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                write(response, out);
+            }
+
+            long replacedLength = target.toFile().length(); // 0 if it does not exist
+            long writtenLength = Files.size(temp);
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+
+            if (diskBytes.addAndGet(writtenLength - replacedLength) > maxDiskBytes)
+                cleanUp();
+        } catch (IOException ex) {
+            // The disk tier is best-effort only.
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void delete(File file) {
+        synchronized (diskCleanupLock) {
+            long length = file.length();
+
+            if (file.delete())
+                diskBytes.addAndGet(-length);
+        }
+    }
+
+    /**
+     * @return true if the specified file is corrupted, or if the entry in it
+     *         has expired and cannot be revalidated (has no validators).
+     */
+    private static boolean isUseless(File file, long nowMillis) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != FILE_MAGIC)
+                return true;
+
+            long expiresAtMillis = in.readLong();
+            boolean hasValidators = in.readBoolean();
+
+            return (nowMillis >= expiresAtMillis) && (!(hasValidators));
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    /*
+     * File format (DataOutput):
+     *   int magic, long expiresAtMillis, boolean hasValidators (read by cleanUp() on its own),
+     *   string key, string url, int statusCode,
+     *   int headerCount, { string name, int valueCount, { string value } },
+     *   bytes body,
+     * where string is UTF-8 bytes, and bytes are an int length followed by the bytes.
+     */
+
+    private static void write(CachedHttpResponse response, DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeLong(response.expiresAtMillis);
+        out.writeBoolean(response.hasValidators());
+        writeString(response.key, out);
+        writeString(response.url, out);
+        out.writeInt(response.statusCode);
+        out.writeInt(response.headers.size());
+
+        for (Map.Entry<String, List<String>> header : response.headers.entrySet()) {
+            writeString(header.getKey(), out);
+            out.writeInt(header.getValue().size());
+
+            for (String value : header.getValue())
+                writeString(value, out);
+        }
+
+        writeBytes(response.body, out);
+    }
+
+    /**
+     * @param fileLength used to reject corrupted lengths instead of allocating huge arrays.
+     */
+    private static CachedHttpResponse read(DataInputStream in, long fileLength) throws IOException {
+        if (in.readInt() != FILE_MAGIC)
+            throw new IOException("not a cached response or an incompatible format version");
+
+        long expiresAtMillis = in.readLong();
+        in.readBoolean(); // hasValidators, derived from the headers
+
+        String key = readString(in, fileLength);
+        String url = readString(in, fileLength);
+        int statusCode = in.readInt();
+        int headerCount = readLength(in, fileLength);
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+
+        for (int i = 0; i < headerCount; i++) {
+            String name = readString(in, fileLength);
+            String[] values = new String[readLength(in, fileLength)];
+
+            for (int j = 0; j < values.length; j++)
+                values[j] = readString(in, fileLength);
+
+            headers.put(name, Arrays.asList(values));
+        }
+
+        byte[] body = readBytes(in, fileLength);
+        return new CachedHttpResponse(key, url, statusCode, headers, body, expiresAtMillis);
+    }
+
+    private static void writeString(String s, DataOutputStream out) throws IOException {
+        writeBytes(s.getBytes(StandardCharsets.UTF_8), out);
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long fileLength) throws IOException {
+        return new String(readBytes(in, fileLength), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in, long fileLength) throws IOException {
+        byte[] bytes = new byte[readLength(in, fileLength)];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+
+    private static int readLength(DataInputStream in, long fileLength) throws IOException {
+        int length = in.readInt();
+
+        if ((length < 0) || (length > fileLength))
+            throw new IOException("invalid length " + length);
+
+        return length;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP content coding (gzip, deflate) utilities used by transports.
+ */
+final class HttpCompression {
+
+    private HttpCompression() {}
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * @return true if the specified Content-Encoding is supported by decode(...).
+     */
+    static boolean isSupported(String contentEncoding) {
+        return ("gzip".equalsIgnoreCase(contentEncoding))
+                || ("x-gzip".equalsIgnoreCase(contentEncoding))
+                || ("deflate".equalsIgnoreCase(contentEncoding));
+    }
+
+    /**
+     * Wrap the specified (compressed) body stream into a stream decompressing it on the fly.
+     * Empty bodies (e.g. in responses to HEAD requests) are left as is.
+     *
+     * @throws IllegalArgumentException if the specified content encoding is not supported.
+     */
+    static InputStream decode(String contentEncoding, InputStream body) throws IOException {
+        if (!(isSupported(contentEncoding)))
+            throw new IllegalArgumentException("unsupported content encoding: " + contentEncoding);
+
+        PushbackInputStream in = new PushbackInputStream(body, 2);
+        int b0 = in.read();
+
+        if (b0 == -1)
+            return in; // empty body
+
+        int b1 = in.read();
+
+        if (b1 != -1)
+            in.unread(b1);
+
+        in.unread(b0);
+
+        if (!("deflate".equalsIgnoreCase(contentEncoding)))
+            return new GZIPInputStream(in, BUFFER_SIZE);
+
+        // "deflate" is supposed to be zlib-wrapped, but some servers send raw deflate data.
+        boolean zlibWrapped = (b1 != -1) && ((b0 & 0x0F) == 8) && ((((b0 << 8) | b1) % 31) == 0);
+        return new OwnedInflaterInputStream(in, new Inflater(!(zlibWrapped)));
+    }
+
+    /**
+     * @return copy of the specified headers without Content-Encoding and
+     *         Content-Length, which do not match the decompressed body.
+     */
+    static Map<String, List<String>> decodedHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> decoded = new LinkedHashMap<>(headers);
+        decoded.keySet().removeIf(name -> ("Content-Encoding".equalsIgnoreCase(name))
+                || ("Content-Length".equalsIgnoreCase(name)));
+
+        return decoded;
+    }
+
+    static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, data.length / 4));
+
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed, BUFFER_SIZE)) {
+            gzipOut.write(data);
+        } catch (IOException ex) {
+            throw new RuntimeException("failed to gzip data", ex); // unexpected
+        }
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * InflaterInputStream does not end() an Inflater passed to it on close (unlike
+     * GZIPInputStream, which creates its own), so native zlib memory would only be
+     * freed once the Inflater is garbage collected.
+     */
+    private static final class OwnedInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        private OwnedInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+}
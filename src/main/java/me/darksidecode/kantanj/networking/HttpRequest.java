@@ -60,6 +60,14 @@ public interface HttpRequest {
      */
     boolean shouldDoInput();
 
+    /**
+     * Whether compressed (gzip, deflate) responses should be requested
+     * and transparently decompressed by the transport. Defaults to true.
+     */
+    default boolean shouldAcceptCompressed() {
+        return true;
+    }
+
     /**
      * Default may vary upon implementation, e.g. false
      * for GetHttpRequest and true for PostHttpRequest.
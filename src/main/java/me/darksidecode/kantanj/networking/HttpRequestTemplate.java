@@ -0,0 +1,367 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.formatting.Formatting;
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, precompiled GET request with placeholders in its URL,
+ * meant to be created once and reused for many requests of the same shape:
+ *
+ *     private static final HttpRequestTemplate CONVERT = HttpRequestTemplate.
+ *             builder("https://example.com/api/v6/convert?q={q}&compact=ultra").
+ *             userAgent(SampleUserAgents.MOZILLA_WIN_NT).
+ *             build();
+ *
+ *     HttpResponse response = Networking.Http.execute(CONVERT.bind("USD_EUR"));
+ *
+ * The URL template is parsed once; static parts of it are used exactly as specified
+ * (i.e. they must already be encoded), while values bound to placeholders ({name})
+ * are URL-encoded and inserted without touching the rest of the URL. Placeholders in
+ * the query string are form-encoded (Formatting#urlEncodeUtf8, space becomes '+'),
+ * while ones before it (e.g. in the path, where '+' is a literal plus) are
+ * percent-encoded (space becomes "%20"). The order of query params is therefore
+ * always the same as in the template.
+ *
+ * Templates are thread-safe and can be shared freely.
+ */
+public final class HttpRequestTemplate {
+
+    private final String template;
+
+    /**
+     * Static parts of the URL. There's always exactly one part more than placeholders.
+     */
+    private final String[] parts;
+
+    /**
+     * Indexes (in `names`) of values to insert after each part but the last one.
+     */
+    private final int[] slots;
+
+    /**
+     * Whether each slot is in the query string (form encoding) or before it (path encoding).
+     */
+    private final boolean[] slotsInQuery;
+
+    /**
+     * Whether each (distinct) placeholder occurs before the query string at least once.
+     */
+    private final boolean[] namesInPath;
+
+    /**
+     * Distinct placeholder names, in the order of their first occurrence.
+     */
+    private final List<String> names;
+
+    private final int staticLength;
+
+    private final String userAgent;
+    private final Map<String, String> requestProperties;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean followRedirects;
+    private final boolean acceptCompressed;
+
+    private HttpRequestTemplate(Builder builder) {
+        this.template = builder.template;
+        this.userAgent = builder.userAgent;
+        this.requestProperties = Collections.unmodifiableMap(new HashMap<>(builder.requestProperties));
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.followRedirects = builder.followRedirects;
+        this.acceptCompressed = builder.acceptCompressed;
+
+        List<String> parts = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Boolean> slotsInQuery = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        boolean inQuery = false;
+        int partStart = 0;
+        int open;
+
+        while ((open = template.indexOf('{', partStart)) != -1) {
+            int close = template.indexOf('}', open);
+
+            if (close == -1)
+                throw new IllegalArgumentException("unclosed placeholder at index " + open + ": " + template);
+
+            String name = template.substring(open + 1, close);
+
+            if ((name.isEmpty()) || (name.indexOf('{') != -1))
+                throw new IllegalArgumentException("invalid placeholder at index " + open + ": " + template);
+
+            int slot = names.indexOf(name);
+
+            if (slot == -1) {
+                slot = names.size();
+                names.add(name);
+            }
+
+            String part = template.substring(partStart, open);
+            inQuery |= (part.indexOf('?') != -1);
+
+            parts.add(part);
+            slots.add(slot);
+            slotsInQuery.add(inQuery);
+            partStart = close + 1;
+        }
+
+        parts.add(template.substring(partStart));
+
+        this.parts = parts.toArray(new String[0]);
+        this.slots = new int[slots.size()];
+        this.slotsInQuery = new boolean[slots.size()];
+        this.namesInPath = new boolean[names.size()];
+        this.names = Collections.unmodifiableList(names);
+
+        for (int i = 0; i < this.slots.length; i++) {
+            this.slots[i] = slots.get(i);
+            this.slotsInQuery[i] = slotsInQuery.get(i);
+
+            if (!(this.slotsInQuery[i]))
+                this.namesInPath[this.slots[i]] = true;
+        }
+
+        int staticLength = 0;
+
+        for (String part : this.parts)
+            staticLength += part.length();
+
+        this.staticLength = staticLength;
+    }
+
+    /**
+     * @param urlTemplate full URL (starting with "http://" or "https://"),
+     *                    possibly containing placeholders like {name}.
+     */
+    public static Builder builder(String urlTemplate) {
+        return new Builder(urlTemplate);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return distinct placeholder names, in the order values are expected by bind(Object...).
+     */
+    public List<String> getPlaceholders() {
+        return names;
+    }
+
+    /**
+     * @param values values for placeholders, in the order of getPlaceholders().
+     */
+    public HttpRequest bind(Object... values) {
+        Check.notNull(values, "values cannot be null");
+
+        if (values.length != names.size())
+            throw new IllegalArgumentException("expected " + names.size()
+                    + " values " + names + ", but got " + values.length);
+
+        String[] queryEncoded = new String[values.length];
+        String[] pathEncoded = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            queryEncoded[i] = Formatting.urlEncodeUtf8(Check.notNull(values[i],
+                    "value for placeholder {%s} cannot be null", names.get(i)).toString());
+
+            // URLEncoder encodes '+' itself as "%2B", so any '+' left is an encoded space.
+            if (namesInPath[i])
+                pathEncoded[i] = queryEncoded[i].replace("+", "%20");
+        }
+
+        return new BoundHttpRequest(render(queryEncoded, pathEncoded));
+    }
+
+    /**
+     * @param values values for placeholders, by placeholder name.
+     */
+    public HttpRequest bind(Map<String, ?> values) {
+        Check.notNull(values, "values cannot be null");
+        Object[] ordered = new Object[names.size()];
+
+        for (int i = 0; i < ordered.length; i++) {
+            String name = names.get(i);
+
+            if (!(values.containsKey(name)))
+                throw new IllegalArgumentException("no value for placeholder {" + name + "}");
+
+            ordered[i] = values.get(name);
+        }
+
+        return bind(ordered);
+    }
+
+    private String render(String[] queryEncoded, String[] pathEncoded) {
+        int length = staticLength;
+
+        for (int i = 0; i < slots.length; i++)
+            length += ((slotsInQuery[i]) ? queryEncoded : pathEncoded)[slots[i]].length();
+
+        StringBuilder url = new StringBuilder(length);
+
+        for (int i = 0; i < slots.length; i++)
+            url.append(parts[i]).append(((slotsInQuery[i]) ? queryEncoded : pathEncoded)[slots[i]]);
+
+        return url.append(parts[parts.length - 1]).toString();
+    }
+
+    private final class BoundHttpRequest implements HttpRequest {
+        private final String url;
+
+        private BoundHttpRequest(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public String getUserAgent() {
+            return userAgent;
+        }
+
+        @Override
+        public RequestMethod getRequestMethod() {
+            return RequestMethod.GET;
+        }
+
+        @Override
+        public boolean isSecured() {
+            return url.startsWith("https://");
+        }
+
+        @Override
+        public Map<String, String> getRequestProperties() {
+            return requestProperties;
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public boolean shouldFollowRedirects() {
+            return followRedirects;
+        }
+
+        @Override
+        public boolean shouldDoInput() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldDoOutput() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldAcceptCompressed() {
+            return acceptCompressed;
+        }
+
+        @Override
+        public String getURL() {
+            return url;
+        }
+
+        @Override
+        public String toString() {
+            return "GET " + url;
+        }
+    }
+
+    public static final class Builder {
+        private final String template;
+
+        private String userAgent;
+        private final Map<String, String> requestProperties = new HashMap<>();
+        private int connectTimeout = SimpleHttpRequest.DEFAULT_CONNECT_TIMEOUT;
+        private int readTimeout = SimpleHttpRequest.DEFAULT_READ_TIMEOUT;
+        private boolean followRedirects;
+        private boolean acceptCompressed = true;
+
+        Builder(String template) {
+            Check.notNull(template, "template cannot be null");
+
+            if ((!(template.startsWith("http://"))) && (!(template.startsWith("https://"))))
+                throw new IllegalArgumentException("non-http protocol in template: " + template);
+
+            this.template = template;
+        }
+
+        public HttpRequestTemplate build() {
+            Check.state(userAgent == null, "userAgent not set");
+            return new HttpRequestTemplate(this);
+        }
+
+        public Builder userAgent(String userAgent) {
+            this.userAgent = Check.notNull(userAgent, "userAgent cannot be null");
+            return this;
+        }
+
+        public Builder requestProperty(String propertyName, String value) {
+            if (Check.notNull(propertyName,
+                    "propertyName cannot be null").equals("User-Agent"))
+                throw new IllegalArgumentException("User-Agent must be set using method userAgent(...)");
+
+            requestProperties.put(propertyName,
+                    Check.notNull(value, "value cannot be null"));
+            return this;
+        }
+
+        public Builder connectTimeout(int timeoutMillis) {
+            if (timeoutMillis < 0)
+                throw new IllegalArgumentException("timeoutMillis must be a positive integer");
+
+            connectTimeout = timeoutMillis;
+            return this;
+        }
+
+        public Builder readTimeout(int timeoutMillis) {
+            if (timeoutMillis < 0)
+                throw new IllegalArgumentException("timeoutMillis must be a positive integer");
+
+            readTimeout = timeoutMillis;
+            return this;
+        }
+
+        public Builder followRedirects(boolean follow) {
+            followRedirects = follow;
+            return this;
+        }
+
+        public Builder acceptCompressed(boolean acceptCompressed) {
+            this.acceptCompressed = acceptCompressed;
+            return this;
+        }
+    }
+
+}
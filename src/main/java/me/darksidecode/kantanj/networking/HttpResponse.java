@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import lombok.Getter;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fully read HTTP response.
+ */
+public class HttpResponse {
+
+    @Getter
+    private final String url;
+
+    @Getter
+    private final int statusCode;
+
+    /**
+     * Response headers with case-insensitive names.
+     */
+    @Getter
+    private final Map<String, List<String>> headers;
+
+    private final byte[] body;
+
+    public HttpResponse(String url, int statusCode, Map<String, List<String>> headers, byte[] body) {
+        this.url = Check.notNull(url, "url cannot be null");
+        this.statusCode = statusCode;
+        this.body = Check.notNull(body, "body cannot be null");
+
+        this.headers = StreamedHttpResponse.caseInsensitive(headers);
+    }
+
+    /**
+     * @return first value of the specified header, or null if there is no such header.
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(Check.notNull(name, "name cannot be null"));
+        return ((values == null) || (values.isEmpty())) ? null : values.get(0);
+    }
+
+    /**
+     * @return true if and only if the status code is 2xx.
+     */
+    public boolean isSuccessful() {
+        return (statusCode >= 200) && (statusCode < 300);
+    }
+
+    /**
+     * @return raw response body (empty array if there was no body).
+     *         The returned array must not be modified.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a StreamedHttpResponse reading the body of this response from memory.
+     */
+    StreamedHttpResponse toStreamed() {
+        return new StreamedHttpResponse(url, statusCode, headers, new ByteArrayInputStream(body), null);
+    }
+
+}
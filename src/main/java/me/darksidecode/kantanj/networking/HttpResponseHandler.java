@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.IOException;
+
+/**
+ * Converts a streamed HTTP response into an object of the desired type.
+ *
+ * Handlers should consume the body directly from the stream rather
+ * than buffering it as a whole where possible. Handlers must not close
+ * the response or keep references to its body stream; this is done by
+ * the caller once the handler returns.
+ *
+ * @see HttpResponseHandlers
+ * @see Networking.Http#execute(HttpRequest, HttpResponseHandler)
+ */
+@FunctionalInterface
+public interface HttpResponseHandler<T> {
+
+    T handle(StreamedHttpResponse response) throws IOException;
+
+}
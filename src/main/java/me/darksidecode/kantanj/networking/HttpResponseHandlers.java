@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import me.darksidecode.kantanj.formatting.CommonJson;
+import me.darksidecode.kantanj.types.Check;
+import org.apache.commons.io.IOUtils;
+
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Common response handlers.
+ *
+ * To consume a response body as a raw InputStream, use
+ * Networking.Http#open(HttpRequest) instead.
+ */
+public final class HttpResponseHandlers {
+
+    private HttpResponseHandlers() {}
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * @return a handler returning the raw response body.
+     */
+    public static HttpResponseHandler<byte[]> bytes() {
+        return response -> IOUtils.toByteArray(response.getBody());
+    }
+
+    /**
+     * @return a handler returning the response body decoded as UTF-8 as is
+     *         (unlike Networking.Http#get, line separators are not altered).
+     */
+    public static HttpResponseHandler<String> utf8String() {
+        return response -> IOUtils.toString(response.getBody(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a handler returning the response body in a direct ByteBuffer
+     *         (flipped, i.e. ready to be read from). If the Content-Length is
+     *         known, the body is read into a buffer of exactly that size without
+     *         any intermediate copies.
+     */
+    public static HttpResponseHandler<ByteBuffer> directByteBuffer() {
+        return response -> {
+            long contentLength = response.getContentLength();
+
+            if (contentLength > Integer.MAX_VALUE)
+                throw new IllegalStateException("response body is too large: " + contentLength);
+
+            ReadableByteChannel channel = Channels.newChannel(response.getBody());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    (contentLength >= 0) ? (int) contentLength : DEFAULT_BUFFER_SIZE);
+            ByteBuffer probe = ByteBuffer.allocate(1);
+
+            while (true) {
+                if (!(buffer.hasRemaining())) {
+                    // Only grow the buffer if there is actually more data
+                    // (which is never the case if Content-Length is correct).
+                    probe.clear();
+
+                    if (channel.read(probe) < 0)
+                        break;
+
+                    buffer = grow(buffer);
+                    probe.flip();
+                    buffer.put(probe);
+                }
+
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+
+            buffer.flip();
+            return buffer;
+        };
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        if (buffer.capacity() == Integer.MAX_VALUE)
+            throw new IllegalStateException("response body is too large");
+
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(
+                DEFAULT_BUFFER_SIZE, buffer.capacity() * 2L));
+        ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity);
+
+        buffer.flip();
+        grown.put(buffer);
+
+        return grown;
+    }
+
+    /**
+     * @return a handler deserializing the response body (UTF-8 JSON) to an object
+     *         of the specified type incrementally, straight from the stream, without
+     *         buffering the whole body in memory first.
+     */
+    public static <T> HttpResponseHandler<T> json(Class<T> typeOfT) {
+        return json((Type) Check.notNull(typeOfT, "typeOfT cannot be null"));
+    }
+
+    /**
+     * @see HttpResponseHandlers#json(Class)
+     */
+    public static <T> HttpResponseHandler<T> json(Type typeOfT) {
+        Check.notNull(typeOfT, "typeOfT cannot be null");
+
+        return response -> CommonJson.getSimpleGsonNoHtmlEsc().fromJson(jsonReader(response), typeOfT);
+    }
+
+    /**
+     * @return a handler parsing the response body (UTF-8 JSON) into a JSON
+     *         tree straight from the stream.
+     */
+    public static HttpResponseHandler<JsonElement> jsonTree() {
+        return response -> new JsonParser().parse(jsonReader(response));
+    }
+
+    private static JsonReader jsonReader(StreamedHttpResponse response) {
+        // JsonReader buffers the input itself.
+        return new JsonReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A pluggable backend actually performing HTTP requests for Networking.Http.
+ *
+ * Implementations are expected to be thread-safe and to reuse (pool)
+ * connections to the same host between requests where possible.
+ *
+ * @see Networking.Http#setTransport(HttpTransport)
+ */
+public interface HttpTransport {
+
+    /**
+     * Send the specified request and return the response without reading its body.
+     *
+     * The returned response **must be closed** by the caller, which releases
+     * the underlying connection back to the pool.
+     *
+     * Responses with error status codes (4xx, 5xx) are returned as usual,
+     * NOT thrown as exceptions; it is up to the caller to check the status.
+     *
+     * @throws IOException if the request could not be sent or the response
+     *                     could not be received (e.g. a connection or read timeout).
+     */
+    StreamedHttpResponse open(HttpRequest request) throws IOException;
+
+    /**
+     * Send the specified request and read the full response.
+     *
+     * @throws IOException if the request could not be sent or the response
+     *                     could not be read (e.g. a connection or read timeout).
+     *
+     * @see HttpTransport#open(HttpRequest)
+     */
+    default HttpResponse execute(HttpRequest request) throws IOException {
+        try (StreamedHttpResponse response = open(request)) {
+            return response.readFully();
+        }
+    }
+
+    /**
+     * Send the specified request asynchronously.
+     *
+     * The default implementation simply runs execute(HttpRequest) on the specified
+     * executor. Transports with native non-blocking I/O support should override this
+     * method to avoid occupying a thread for the whole duration of the request.
+     *
+     * @param executor executor to run blocking I/O on, if this transport needs one.
+     *
+     * @return a future completed with the response (the same way as execute(...)
+     *         returns it), or completed exceptionally with an IOException.
+     */
+    default CompletableFuture<HttpResponse> executeAsync(HttpRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(request);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return connection and request statistics of this transport.
+     */
+    HttpTransportStats getStats();
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe request and connection counters of an HttpTransport.
+ */
+public class HttpTransportStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder trackedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsReleased = new LongAdder();
+    private final LongAdder connectionsDiscarded = new LongAdder();
+
+    /**
+     * @param connectionTracked whether the transport is able to observe opening
+     *                          of a new physical connection for this request
+     *                          (i.e. whether it calls connectionOpened() if so).
+     */
+    public void requestSent(boolean connectionTracked) {
+        requests.increment();
+
+        if (connectionTracked)
+            trackedRequests.increment();
+    }
+
+    public void requestFailed() {
+        failedRequests.increment();
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionReleased() {
+        connectionsReleased.increment();
+    }
+
+    public void connectionDiscarded() {
+        connectionsDiscarded.increment();
+    }
+
+    /**
+     * @return total number of requests sent.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests that failed with an I/O error.
+     */
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    /**
+     * @return number of requests for which the transport was able to observe
+     *         whether a new physical connection was opened. For example, the
+     *         HttpURLConnection-based transport can only observe TLS connections.
+     */
+    public long getTrackedRequests() {
+        return trackedRequests.sum();
+    }
+
+    /**
+     * @return number of new physical connections opened for tracked requests.
+     *
+     * @see HttpTransportStats#getTrackedRequests()
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * @return number of times a connection was returned to the pool
+     *         after a fully consumed response, available for reuse.
+     */
+    public long getConnectionsReleased() {
+        return connectionsReleased.sum();
+    }
+
+    /**
+     * @return number of times a connection was closed instead of being
+     *         returned to the pool (e.g. because of an I/O error).
+     */
+    public long getConnectionsDiscarded() {
+        return connectionsDiscarded.sum();
+    }
+
+    /**
+     * @return number of tracked requests served over an already open connection.
+     *
+     * @see HttpTransportStats#getTrackedRequests()
+     */
+    public long getReusedConnections() {
+        return Math.max(0, getTrackedRequests() - getConnectionsOpened());
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTransportStats{requests=" + getRequests() + ", failedRequests=" + getFailedRequests()
+                + ", trackedRequests=" + getTrackedRequests() + ", connectionsOpened=" + getConnectionsOpened()
+                + ", reusedConnections=" + getReusedConnections() + ", connectionsReleased="
+                + getConnectionsReleased() + ", connectionsDiscarded=" + getConnectionsDiscarded() + '}';
+    }
+
+}
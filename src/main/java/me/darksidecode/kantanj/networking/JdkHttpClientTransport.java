@@ -0,0 +1,360 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An HttpTransport based on the JDK HttpClient (java.net.http, Java 11+), which
+ * speaks HTTP/2 and multiplexes concurrent requests to the same host over a single
+ * connection, instead of opening a connection per in-flight request. Servers not
+ * supporting HTTP/2 are transparently talked to over HTTP/1.1.
+ *
+ * kantanj targets Java 8, so HttpClient is accessed reflectively. Use
+ * createOrFallback() to get this transport when running on Java 11+, and
+ * UrlConnectionTransport otherwise:
+ *
+ *     Networking.Http.setTransport(JdkHttpClientTransport.createOrFallback());
+ *
+ * Connections are only shared between requests with the same connect timeout and
+ * redirect policy, as these are HttpClient (not request) settings. The read timeout
+ * of a request is applied as a timeout of waiting for response headers.
+ *
+ * Unlike UrlConnectionTransport, this one completes executeAsync(...) without
+ * occupying a thread while waiting for the response.
+ */
+public class JdkHttpClientTransport implements HttpTransport {
+
+    private static final Api API = Api.load();
+
+    /**
+     * Headers that HttpClient sets itself and does not allow to be set manually.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private final HttpTransportStats stats = new HttpTransportStats();
+
+    private final LongAdder http2Responses = new LongAdder();
+
+    private final boolean preferHttp2;
+
+    private final Map<String, Object> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @throws UnsupportedOperationException if HttpClient is not available (Java 8-10).
+     */
+    public JdkHttpClientTransport() {
+        this(true);
+    }
+
+    /**
+     * @param preferHttp2 whether HTTP/2 should be attempted (false to always use HTTP/1.1).
+     *
+     * @throws UnsupportedOperationException if HttpClient is not available (Java 8-10).
+     */
+    public JdkHttpClientTransport(boolean preferHttp2) {
+        if (!(isAvailable()))
+            throw new UnsupportedOperationException("java.net.http.HttpClient is not available (Java 11+ required)");
+
+        this.preferHttp2 = preferHttp2;
+    }
+
+    /**
+     * @return true if the JDK HttpClient is available in the current runtime (Java 11+).
+     */
+    public static boolean isAvailable() {
+        return API != null;
+    }
+
+    /**
+     * @return a new JdkHttpClientTransport if the JDK HttpClient is available,
+     *         or a new UrlConnectionTransport (HTTP/1.1 only) otherwise.
+     */
+    public static HttpTransport createOrFallback() {
+        return (isAvailable()) ? new JdkHttpClientTransport() : new UrlConnectionTransport();
+    }
+
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        Object clientRequest = buildRequest(request);
+        stats.requestSent(false);
+
+        try {
+            Object response = API.invoke(API.send, client(request), clientRequest, API.ofInputStream);
+            return toStreamed(request, response, (InputStream) API.invoke(API.body, response));
+        } catch (IOException ex) {
+            stats.requestFailed();
+            throw ex;
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, Executor executor) {
+        Object clientRequest;
+
+        try {
+            clientRequest = buildRequest(request);
+        } catch (IOException ex) {
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+
+            return failed;
+        }
+
+        stats.requestSent(false);
+
+        try {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Object> future = (CompletableFuture<Object>) API.invoke(
+                    API.sendAsync, client(request), clientRequest, API.ofByteArray);
+
+            return future.handle((response, t) -> {
+                if (t != null) {
+                    stats.requestFailed();
+                    throw (t instanceof CompletionException) ? (CompletionException) t : new CompletionException(t);
+                }
+
+                try (StreamedHttpResponse streamed = toStreamed(request, response,
+                        new ByteArrayInputStream((byte[]) API.invoke(API.body, response)))) {
+                    return streamed.readFully();
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+        } catch (IOException ex) {
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+
+            return failed;
+        }
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return number of responses received over HTTP/2.
+     */
+    public long getHttp2Responses() {
+        return http2Responses.sum();
+    }
+
+    private Object client(HttpRequest request) throws IOException {
+        boolean followRedirects = request.shouldFollowRedirects();
+        int connectTimeout = request.getConnectTimeout();
+        String key = followRedirects + ":" + connectTimeout;
+
+        Object client = clients.get(key);
+
+        if (client == null) {
+            Object builder = API.invoke(API.newClientBuilder, null);
+            API.invoke(API.clientVersion, builder, (preferHttp2) ? API.http2 : API.http11);
+            API.invoke(API.clientFollowRedirects, builder, (followRedirects) ? API.redirectNormal : API.redirectNever);
+
+            if (connectTimeout > 0)
+                API.invoke(API.clientConnectTimeout, builder, Duration.ofMillis(connectTimeout));
+
+            Object created = API.invoke(API.clientBuild, builder);
+            client = clients.putIfAbsent(key, created);
+
+            if (client == null)
+                client = created;
+        }
+
+        return client;
+    }
+
+    private Object buildRequest(HttpRequest request) throws IOException {
+        Object builder = API.invoke(API.newRequestBuilder, null, URI.create(request.getURL()));
+
+        if (request.getReadTimeout() > 0)
+            API.invoke(API.requestTimeout, builder, Duration.ofMillis(
+                    (long) request.getConnectTimeout() + request.getReadTimeout()));
+
+        Map<String, String> requestProps = request.getRequestProperties();
+
+        for (Map.Entry<String, String> prop : requestProps.entrySet())
+            if (!(RESTRICTED_HEADERS.contains(prop.getKey().toLowerCase())))
+                API.invoke(API.requestSetHeader, builder, prop.getKey(), prop.getValue());
+
+        API.invoke(API.requestSetHeader, builder, "User-Agent", request.getUserAgent());
+
+        if ((request.shouldAcceptCompressed()) && (!(requestProps.containsKey("Accept-Encoding"))))
+            API.invoke(API.requestSetHeader, builder, "Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+
+        if (request instanceof PostHttpRequest) {
+            if (!(requestProps.containsKey("Content-Type")))
+                API.invoke(API.requestSetHeader, builder, "Content-Type",
+                        "application/x-www-form-urlencoded; charset=ISO-8859-1");
+
+            Object bodyPublisher = API.invoke(API.ofByteArrayPublisher, null,
+                    (Object) ((PostHttpRequest) request).getPostData());
+            API.invoke(API.requestMethod, builder, "POST", bodyPublisher);
+        } else
+            API.invoke(API.requestMethod, builder, request.getRequestMethod().name(),
+                    API.invoke(API.noBodyPublisher, null));
+
+        return API.invoke(API.requestBuild, builder);
+    }
+
+    private StreamedHttpResponse toStreamed(HttpRequest request, Object response, InputStream body) throws IOException {
+        int statusCode = (Integer) API.invoke(API.statusCode, response);
+
+        if (API.invoke(API.version, response) == API.http2)
+            http2Responses.increment();
+
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> headers = (Map<String, List<String>>)
+                API.invoke(API.headersMap, API.invoke(API.headers, response));
+
+        headers = StreamedHttpResponse.caseInsensitive(headers);
+        List<String> contentEncoding = headers.get("Content-Encoding");
+
+        if ((request.shouldAcceptCompressed()) && (contentEncoding != null) && (!(contentEncoding.isEmpty()))
+                && (HttpCompression.isSupported(contentEncoding.get(0)))) {
+            body = HttpCompression.decode(contentEncoding.get(0), body);
+            headers = HttpCompression.decodedHeaders(headers);
+        }
+
+        return new StreamedHttpResponse(request.getURL(), statusCode, headers, body, stats::connectionReleased);
+    }
+
+    /**
+     * Reflective handles of the java.net.http API.
+     */
+    private static final class Api {
+        private Method newClientBuilder, clientVersion, clientFollowRedirects, clientConnectTimeout, clientBuild;
+        private Method send, sendAsync;
+        private Method newRequestBuilder, requestTimeout, requestSetHeader, requestMethod, requestBuild;
+        private Method noBodyPublisher, ofByteArrayPublisher;
+        private Method statusCode, version, headers, headersMap, body;
+
+        private Object http2, http11, redirectNormal, redirectNever;
+        private Object ofInputStream, ofByteArray;
+
+        /**
+         * @return null if HttpClient is not available.
+         */
+        static Api load() {
+            try {
+                Class<?> client = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> versionEnum = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> redirectEnum = Class.forName("java.net.http.HttpClient$Redirect");
+                Class<?> request = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> response = Class.forName("java.net.http.HttpResponse");
+                Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+
+                Api api = new Api();
+
+                api.newClientBuilder = client.getMethod("newBuilder");
+                api.clientVersion = clientBuilder.getMethod("version", versionEnum);
+                api.clientFollowRedirects = clientBuilder.getMethod("followRedirects", redirectEnum);
+                api.clientConnectTimeout = clientBuilder.getMethod("connectTimeout", Duration.class);
+                api.clientBuild = clientBuilder.getMethod("build");
+                api.send = client.getMethod("send", request, bodyHandler);
+                api.sendAsync = client.getMethod("sendAsync", request, bodyHandler);
+
+                api.newRequestBuilder = request.getMethod("newBuilder", URI.class);
+                api.requestTimeout = requestBuilder.getMethod("timeout", Duration.class);
+                api.requestSetHeader = requestBuilder.getMethod("setHeader", String.class, String.class);
+                api.requestMethod = requestBuilder.getMethod("method", String.class, bodyPublisher);
+                api.requestBuild = requestBuilder.getMethod("build");
+                api.noBodyPublisher = bodyPublishers.getMethod("noBody");
+                api.ofByteArrayPublisher = bodyPublishers.getMethod("ofByteArray", byte[].class);
+
+                api.statusCode = response.getMethod("statusCode");
+                api.version = response.getMethod("version");
+                api.headers = response.getMethod("headers");
+                api.headersMap = httpHeaders.getMethod("map");
+                api.body = response.getMethod("body");
+
+                api.http2 = enumConstant(versionEnum, "HTTP_2");
+                api.http11 = enumConstant(versionEnum, "HTTP_1_1");
+                api.redirectNormal = enumConstant(redirectEnum, "NORMAL");
+                api.redirectNever = enumConstant(redirectEnum, "NEVER");
+                api.ofInputStream = bodyHandlers.getMethod("ofInputStream").invoke(null);
+                api.ofByteArray = bodyHandlers.getMethod("ofByteArray").invoke(null);
+
+                return api;
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                return null; // Java 8-10, or the java.net.http module is not present
+            }
+        }
+
+        private static Object enumConstant(Class<?> enumClass, String name) {
+            for (Object constant : enumClass.getEnumConstants())
+                if (((Enum<?>) constant).name().equals(name))
+                    return constant;
+
+            throw new IllegalStateException("no " + name + " in " + enumClass.getName());
+        }
+
+        Object invoke(Method method, Object target, Object... args) throws IOException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+
+                if (cause instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for a response");
+                }
+
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+
+                if (cause instanceof Error)
+                    throw (Error) cause;
+
+                throw new IOException(cause);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("HttpClient API is not accessible", ex); // unexpected
+            }
+        }
+    }
+
+}
@@ -17,14 +17,16 @@
 package me.darksidecode.kantanj.networking;
 
 import me.darksidecode.kantanj.types.Check;
-import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Networking {
 
@@ -55,21 +57,49 @@ public final class Networking {
     public static final class Http {
         private Http() {}
 
+        private static volatile HttpTransport transport = new UrlConnectionTransport();
+
+        private static volatile Executor asyncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "kantanj-http-async-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        public static HttpTransport getTransport() {
+            return transport;
+        }
+
+        /**
+         * Replace the backend used to actually perform HTTP requests
+         * (UrlConnectionTransport by default).
+         */
+        public static void setTransport(HttpTransport transport) {
+            Http.transport = Check.notNull(transport, "transport cannot be null");
+        }
+
+        public static Executor getAsyncExecutor() {
+            return asyncExecutor;
+        }
+
+        /**
+         * Set the executor used by the *Async methods for transports that do not support
+         * non-blocking I/O natively (UrlConnectionTransport included). By default, a cached
+         * pool of daemon threads is used. On Java 21+, the number of requests in flight may
+         * be increased drastically by using Executors.newVirtualThreadPerTaskExecutor().
+         */
+        public static void setAsyncExecutor(Executor asyncExecutor) {
+            Http.asyncExecutor = Check.notNull(asyncExecutor, "asyncExecutor cannot be null");
+        }
+
         public static String post(PostHttpRequest request) {
             try {
-                HttpURLConnection con = openConnection(request);
-                StringBuilder response = new StringBuilder();
-
-                OutputStream outputStream = con.getOutputStream();
-                outputStream.write(request.getPostData());
-                outputStream.close();
-
-                if (request.shouldDoInput())
-                    return readResponseAndDisconnect(con, response);
-                else {
-                    con.disconnect();
-                    return null;
-                }
+                HttpResponse response = execute(request);
+                return (request.shouldDoInput()) ? toText(response) : null;
             } catch (Exception ex) {
                 throw new RuntimeException("http POST request failed", ex);
             }
@@ -77,15 +107,148 @@ public final class Networking {
 
         public static String get(GetHttpRequest request) {
             try {
-                HttpURLConnection con = openConnection(request);
-                StringBuilder response = new StringBuilder();
-
-                return readResponseAndDisconnect(con, response);
+                return toText(execute(request));
             } catch (Exception ex) {
                 throw new RuntimeException("http GET request failed", ex);
             }
         }
 
+        /**
+         * Send the specified request using the current transport.
+         *
+         * @throws IOException if the request failed or if the server
+         *                     responded with an error status code (4xx, 5xx).
+         */
+        public static HttpResponse execute(HttpRequest request) throws IOException {
+            return checkStatus(transport.execute(Check.notNull(request, "request cannot be null")));
+        }
+
+        /**
+         * Send the specified request and process the response body with the specified
+         * handler straight from the stream, without buffering the whole body in memory
+         * (unless the handler does so itself).
+         *
+         * @throws IOException if the request failed, if the server responded with an
+         *                     error status code (4xx, 5xx), or if the handler failed.
+         *
+         * @see HttpResponseHandlers
+         */
+        public static <T> T execute(HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+            Check.notNull(handler, "handler cannot be null");
+
+            try (StreamedHttpResponse response = open(request)) {
+                return handler.handle(response);
+            }
+        }
+
+        /**
+         * Send the specified request and return the response without reading its body,
+         * e.g. to consume the body as a raw InputStream (StreamedHttpResponse#getBody).
+         *
+         * The returned response **must be closed** by the caller.
+         *
+         * @throws IOException if the request failed or if the server
+         *                     responded with an error status code (4xx, 5xx).
+         */
+        public static StreamedHttpResponse open(HttpRequest request) throws IOException {
+            StreamedHttpResponse response = transport.open(Check.notNull(request, "request cannot be null"));
+
+            if (response.getStatusCode() >= 400) {
+                response.close();
+                throw new IOException("server returned HTTP response code: "
+                        + response.getStatusCode() + " for URL: " + response.getUrl());
+            }
+
+            return response;
+        }
+
+        /**
+         * Same as execute(HttpRequest), but never blocks the calling thread.
+         *
+         * @return a future completed with the response, or completed exceptionally
+         *         with an IOException if the request failed (failures other than
+         *         IOExceptions are wrapped into one) or if the server responded
+         *         with an error status code (4xx, 5xx).
+         */
+        public static CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+            Check.notNull(request, "request cannot be null");
+            CompletableFuture<HttpResponse> future;
+
+            try {
+                future = transport.executeAsync(request, asyncExecutor);
+            } catch (RuntimeException ex) {
+                // E.g. a RejectedExecutionException or an invalid request.
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+
+            return future.handle((response, t) -> {
+                try {
+                    if (t != null)
+                        throw asIOException(t);
+
+                    return checkStatus(response);
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+        }
+
+        private static IOException asIOException(Throwable t) {
+            Throwable cause = ((t instanceof CompletionException) && (t.getCause() != null)) ? t.getCause() : t;
+
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            return (cause instanceof IOException) ? (IOException) cause
+                    : new IOException("http request failed", cause);
+        }
+
+        /**
+         * @see Http#get(GetHttpRequest)
+         * @see Http#executeAsync(HttpRequest)
+         */
+        public static CompletableFuture<String> getAsync(GetHttpRequest request) {
+            return executeAsync(request).thenApply(Http::toText);
+        }
+
+        /**
+         * @see Http#post(PostHttpRequest)
+         * @see Http#executeAsync(HttpRequest)
+         */
+        public static CompletableFuture<String> postAsync(PostHttpRequest request) {
+            return executeAsync(request).thenApply(response ->
+                    (request.shouldDoInput()) ? toText(response) : null);
+        }
+
+        /**
+         * @return a future completed with a copy of the raw response body
+         *         (the response itself may be shared, e.g. by a caching transport).
+         *
+         * @see Http#executeAsync(HttpRequest)
+         */
+        public static CompletableFuture<byte[]> getBytesAsync(GetHttpRequest request) {
+            return executeAsync(request).thenApply(response -> response.getBody().clone());
+        }
+
+        /**
+         * @return a future completed with a copy of the raw response body
+         *         (the response itself may be shared, e.g. by a caching transport).
+         *
+         * @see Http#executeAsync(HttpRequest)
+         */
+        public static CompletableFuture<byte[]> postBytesAsync(PostHttpRequest request) {
+            return executeAsync(request).thenApply(response -> response.getBody().clone());
+        }
+
+        private static HttpResponse checkStatus(HttpResponse response) throws IOException {
+            if (response.getStatusCode() >= 400)
+                throw new IOException("server returned HTTP response code: "
+                        + response.getStatusCode() + " for URL: " + response.getUrl());
+
+            return response;
+        }
+
         public static HttpURLConnection openConnection(HttpRequest request) {
             Check.notNull(request, "request cannot be null");
 
@@ -122,21 +285,35 @@ public final class Networking {
             }
         }
 
-        private static String readResponseAndDisconnect(HttpURLConnection con,
-                                                        StringBuilder response) throws IOException {
-            InputStream inputStream = con.getInputStream();
+        /**
+         * Line separators ("\r\n", '\r' or '\n') are all replaced with '\n', and the
+         * trailing new-line is deleted (this is how get(...) and post(...) have always
+         * behaved). Use execute(HttpRequest, HttpResponseHandler) with, for example,
+         * HttpResponseHandlers#utf8String() to get the response body as is.
+         */
+        private static String toText(HttpResponse httpResponse) {
+            String body = httpResponse.getBodyAsString();
+            StringBuilder response = null; // only allocated if there are any '\r's
 
-            for (String line : IOUtils.readLines(inputStream, StandardCharsets.UTF_8))
-                response.append(line).append('\n');
+            for (int i = 0; i < body.length(); i++) {
+                char c = body.charAt(i);
 
-            inputStream.close();
-            con.disconnect();
+                if (c == '\r') {
+                    if (response == null)
+                        response = new StringBuilder(body.length()).append(body, 0, i);
+
+                    response.append('\n');
+
+                    if ((i + 1 < body.length()) && (body.charAt(i + 1) == '\n'))
+                        i++; // "\r\n"
+                } else if (response != null)
+                    response.append(c);
+            }
 
-            if ((response.length() > 0) && (response.charAt(response.length() - 1) == '\n'))
-                // Delete trailing new-line.
-                response.deleteCharAt(response.length() - 1);
+            String text = (response == null) ? body : response.toString();
 
-            return response.toString();
+            // Delete trailing new-line.
+            return (text.endsWith("\n")) ? text.substring(0, text.length() - 1) : text;
         }
     }
 
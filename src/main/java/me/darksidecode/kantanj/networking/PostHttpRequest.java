@@ -26,6 +26,13 @@ public class PostHttpRequest extends SimpleHttpRequest {
 
     private byte[] postData;
 
+    private boolean gzipPostData;
+
+    /**
+     * Lazily compressed postData, if gzipPostData is enabled.
+     */
+    private byte[] gzippedPostData;
+
     @Override
     public PostHttpRequest done() {
         return this;
@@ -54,24 +61,54 @@ public class PostHttpRequest extends SimpleHttpRequest {
 
     public PostHttpRequest postData(byte[] postData) {
         this.postData = Check.notNull(postData, "post data cannot be null");
+        gzippedPostData = null;
         return this;
     }
 
     public PostHttpRequest postUtf8Data(String postDataUtf8) {
-        postData = Check.notNull(postDataUtf8,
-                "post data cannot be null").getBytes(StandardCharsets.UTF_8);
+        return postData(Check.notNull(postDataUtf8,
+                "post data cannot be null").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send post data compressed with gzip ("Content-Encoding: gzip").
+     * Only use this if the server is known to accept compressed requests.
+     */
+    public PostHttpRequest gzipPostData(boolean gzipPostData) {
+        if (gzipPostData)
+            requestProperty("Content-Encoding", "gzip");
+        else
+            getRequestProperties().remove("Content-Encoding");
+
+        this.gzipPostData = gzipPostData;
+        gzippedPostData = null;
+
         return this;
     }
 
+    public boolean shouldGzipPostData() {
+        return gzipPostData;
+    }
+
     public <T extends Serializable> PostHttpRequest postJsonData(T object) {
         requestProperty("Content-Type", "application/json; charset=UTF-8");
         return postUtf8Data(CommonJson.toJson(object));
     }
 
+    /**
+     * @return post data exactly as it should be sent (i.e. compressed, if gzipPostData is enabled).
+     */
     public byte[] getPostData() {
         if (postData == null)
             throw new IllegalArgumentException("post data is not set");
-        return postData;
+
+        if (!(gzipPostData))
+            return postData;
+
+        if (gzippedPostData == null)
+            gzippedPostData = HttpCompression.gzip(postData);
+
+        return gzippedPostData;
     }
 
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import java.io.IOException;
+
+/**
+ * Thrown to indicate that a request was not sent because the rate or concurrency
+ * limit of the target host would not allow it within the configured timeout.
+ *
+ * @see RateLimitingHttpTransport
+ */
+public class RateLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 3238691690138398610L;
+
+    public RateLimitExceededException(String message) {
+        super(message);
+    }
+
+}
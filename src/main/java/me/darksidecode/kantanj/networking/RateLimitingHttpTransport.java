@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An HttpTransport decorator limiting the rate (token bucket) and, optionally,
+ * the concurrency of outbound requests to each host separately.
+ *
+ * Requests exceeding the limits either wait for at most the configured
+ * acquire timeout, or fail fast with a RateLimitExceededException if the
+ * timeout is zero (or if waiting would take longer than that anyway).
+ *
+ * Responses with status 429 Too Many Requests, as well as any responses with
+ * a Retry-After header, pause all requests to the host until the specified
+ * moment and (if adaptive) reduce its rate limit. These responses are still
+ * returned to the caller as usual; combined with a ResilientHttpTransport on
+ * top of this one, retries of such requests automatically wait for the pause:
+ *
+ *     Networking.Http.setTransport(ResilientHttpTransport.builder(
+ *             RateLimitingHttpTransport.builder(Networking.Http.getTransport()).
+ *                     ratePerSecond(10).
+ *                     build()).build());
+ *
+ * Limiters of hosts that were not requested for hostIdleTimeout (10 minutes by
+ * default) are forgotten, together with any pause or reduced rate of theirs, so
+ * that talking to many different hosts over time does not grow memory usage.
+ *
+ * Note that waiting for a permit blocks the calling thread (for the *Async methods
+ * of Networking.Http, the thread of its async executor).
+ */
+public class RateLimitingHttpTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxConcurrentRequestsPerHost;
+    private final boolean adaptive;
+    private final long acquireTimeoutNanos;
+    private final long defaultRetryAfterNanos;
+
+    private final LoadingCache<String, HostRateLimiter> limiters;
+
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder throttledResponses = new LongAdder();
+
+    private RateLimitingHttpTransport(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ratePerSecond = builder.ratePerSecond;
+        this.burst = builder.burst;
+        this.maxConcurrentRequestsPerHost = builder.maxConcurrentRequestsPerHost;
+        this.adaptive = builder.adaptive;
+        this.acquireTimeoutNanos = builder.acquireTimeoutNanos;
+        this.defaultRetryAfterNanos = builder.defaultRetryAfterNanos;
+        this.limiters = CacheBuilder.newBuilder().
+                expireAfterAccess(builder.hostIdleTimeoutNanos, TimeUnit.NANOSECONDS).
+                build(CacheLoader.from(key -> new HostRateLimiter(
+                        ratePerSecond, burst, maxConcurrentRequestsPerHost, adaptive)));
+    }
+
+    public static Builder builder(HttpTransport delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        Check.notNull(request, "request cannot be null");
+
+        String hostKey = ResilientHttpTransport.hostKey(request.getURL());
+        HostRateLimiter limiter = limiters.getUnchecked(hostKey);
+
+        try {
+            if (!(limiter.acquire(acquireTimeoutNanos))) {
+                rejectedRequests.increment();
+                throw new RateLimitExceededException("rate limit for " + hostKey + " exceeded"
+                        + ((limiter.getPausedMillis() > 0) ? ", retry after "
+                        + limiter.getPausedMillis() + " ms" : ""));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a rate limit permit");
+        }
+
+        StreamedHttpResponse response;
+
+        try {
+            response = delegate.open(request);
+        } catch (IOException | RuntimeException | Error ex) {
+            limiter.release();
+            throw ex;
+        }
+
+        long retryAfterNanos = retryAfterNanos(response);
+
+        if (retryAfterNanos >= 0) {
+            throttledResponses.increment();
+            limiter.onThrottled(retryAfterNanos);
+        } else if (response.getStatusCode() < 400)
+            limiter.onSuccess();
+
+        // The concurrency permit is held until the response is consumed.
+        return new StreamedHttpResponse(response.getUrl(), response.getStatusCode(),
+                response.getHeaders(), response.getBody(), () -> {
+                    try {
+                        response.close();
+                    } finally {
+                        limiter.release();
+                    }
+                });
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return delegate.getStats();
+    }
+
+    /**
+     * @param url any URL of the host in question.
+     *
+     * @return the limiter of the host of the specified URL,
+     *         or null if no requests were sent to that host (recently).
+     */
+    public HostRateLimiter getLimiter(String url) throws IOException {
+        return limiters.getIfPresent(ResilientHttpTransport.hostKey(Check.notNull(url, "url cannot be null")));
+    }
+
+    /**
+     * @return number of requests rejected because of the limits.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * @return number of responses that asked to slow down (429, Retry-After).
+     */
+    public long getThrottledResponses() {
+        return throttledResponses.sum();
+    }
+
+    /**
+     * @return for how long requests to the host should be paused, in nanoseconds,
+     *         or -1 if the specified response does not ask to slow down.
+     */
+    private long retryAfterNanos(StreamedHttpResponse response) {
+        String retryAfter = response.getHeader("Retry-After");
+
+        if (retryAfter == null)
+            return (response.getStatusCode() == 429) ? defaultRetryAfterNanos : -1;
+
+        long nanos = parseRetryAfterNanos(retryAfter);
+        return (nanos < 0) ? defaultRetryAfterNanos : nanos;
+    }
+
+    /**
+     * @param retryAfter value of a Retry-After header: either a number of seconds or an HTTP date.
+     *
+     * @return the delay it specifies in nanoseconds (at most HostRateLimiter.MAX_PAUSE_NANOS),
+     *         or -1 if the value is not valid.
+     */
+    static long parseRetryAfterNanos(String retryAfter) {
+        retryAfter = retryAfter.trim();
+
+        if ((!(retryAfter.isEmpty())) && (retryAfter.chars().allMatch(c -> (c >= '0') && (c <= '9')))) {
+            long maxSeconds = TimeUnit.NANOSECONDS.toSeconds(HostRateLimiter.MAX_PAUSE_NANOS);
+
+            // Don't let huge values overflow parseLong (or the nanos) - just cap them.
+            long seconds = (retryAfter.length() > 18) ? maxSeconds
+                    : Math.min(maxSeconds, Long.parseLong(retryAfter));
+
+            return TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        long retryAtMillis = CachingHttpTransport.parseHttpDate(retryAfter);
+
+        if (retryAtMillis < 0)
+            return -1;
+
+        long delayMillis = Math.max(0, retryAtMillis - System.currentTimeMillis());
+        return Math.min(HostRateLimiter.MAX_PAUSE_NANOS, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+
+    public static final class Builder {
+        private final HttpTransport delegate;
+
+        private double ratePerSecond = 10.0;
+        private int burst = 10;
+        private int maxConcurrentRequestsPerHost;
+        private boolean adaptive = true;
+        private long acquireTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
+        private long defaultRetryAfterNanos = TimeUnit.SECONDS.toNanos(1);
+        private long hostIdleTimeoutNanos = TimeUnit.MINUTES.toNanos(10);
+
+        Builder(HttpTransport delegate) {
+            this.delegate = Check.notNull(delegate, "delegate cannot be null");
+        }
+
+        public RateLimitingHttpTransport build() {
+            return new RateLimitingHttpTransport(this);
+        }
+
+        /**
+         * Maximum sustained rate of requests to each host. Defaults to 10.
+         */
+        public Builder ratePerSecond(double ratePerSecond) {
+            if ((Double.isNaN(ratePerSecond)) || (ratePerSecond <= 0.0))
+                throw new IllegalArgumentException("ratePerSecond must be positive");
+
+            this.ratePerSecond = ratePerSecond;
+            return this;
+        }
+
+        /**
+         * Maximum number of requests to each host that may be sent at once
+         * after a period of inactivity. Defaults to 10.
+         */
+        public Builder burst(int burst) {
+            if (burst < 1)
+                throw new IllegalArgumentException("burst must be a positive integer");
+
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Maximum number of requests to each host in flight at the same time.
+         * Zero (default) means no limit.
+         */
+        public Builder maxConcurrentRequestsPerHost(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 0)
+                throw new IllegalArgumentException("maxConcurrentRequests cannot be negative");
+
+            this.maxConcurrentRequestsPerHost = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * Whether the rate limit should be temporarily reduced when a host asks
+         * to slow down. Defaults to true.
+         */
+        public Builder adaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        /**
+         * For how long a request may wait for a permit before failing with a
+         * RateLimitExceededException. Zero means "fail fast". Defaults to 30 seconds.
+         */
+        public Builder acquireTimeout(long acquireTimeout, TimeUnit unit) {
+            if (acquireTimeout < 0)
+                throw new IllegalArgumentException("acquireTimeout cannot be negative");
+
+            this.acquireTimeoutNanos = Check.notNull(unit, "unit cannot be null").toNanos(acquireTimeout);
+            return this;
+        }
+
+        /**
+         * For how long to pause requests to a host that responded with 429 Too Many
+         * Requests without a (valid) Retry-After header. Defaults to 1 second.
+         */
+        public Builder defaultRetryAfter(long retryAfter, TimeUnit unit) {
+            if (retryAfter < 0)
+                throw new IllegalArgumentException("retryAfter cannot be negative");
+
+            this.defaultRetryAfterNanos = Check.notNull(unit, "unit cannot be null").toNanos(retryAfter);
+            return this;
+        }
+
+        /**
+         * For how long the limiter of a host is kept after the last request to it.
+         * Should be longer than requests to a host may take. Defaults to 10 minutes.
+         */
+        public Builder hostIdleTimeout(long idleTimeout, TimeUnit unit) {
+            if (idleTimeout < 1)
+                throw new IllegalArgumentException("idleTimeout must be positive");
+
+            this.hostIdleTimeoutNanos = Check.notNull(unit, "unit cannot be null").toNanos(idleTimeout);
+            return this;
+        }
+    }
+
+}
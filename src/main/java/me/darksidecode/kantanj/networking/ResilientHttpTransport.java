@@ -0,0 +1,467 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import me.darksidecode.kantanj.types.Check;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * An HttpTransport decorator that makes requests resilient to slow or unhealthy servers:
+ *
+ *   - failed requests (I/O errors and responses with "retryable" status codes) are
+ *     retried with a jittered exponential backoff according to a RetryPolicy, but
+ *     not sooner than the Retry-After header of a retryable response asks for (if it
+ *     asks to wait longer than the policy's maxBackoff, the response is returned as is)
+ *     (requests rejected locally with a RateLimitExceededException or a
+ *     CircuitBreakerOpenException are neither retried nor counted as failures);
+ *
+ *   - each host has its own CircuitBreaker, so that requests to a host that keeps
+ *     failing fail fast with a CircuitBreakerOpenException instead of waiting for
+ *     timeouts and stalling the calling threads;
+ *
+ *   - optionally, if a GET request takes longer than the specified percentile of
+ *     recent response times of its host, an identical "hedged" request is sent,
+ *     and whichever of the two completes first wins.
+ *
+ * State of hosts (circuit breakers, response times) that were not requested for
+ * hostIdleTimeout (10 minutes by default) is forgotten, so that talking to many
+ * different hosts over time does not make this transport grow without bounds.
+ *
+ * Everything built on top of Networking.Http (IPAPI, SimpleCurrencyConverter, etc.)
+ * benefits from this once it is installed as the current transport:
+ *
+ *     Networking.Http.setTransport(ResilientHttpTransport.
+ *             builder(Networking.Http.getTransport()).build());
+ */
+public class ResilientHttpTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final RetryPolicy retryPolicy;
+
+    private final int failureThreshold;
+    private final long openTimeMillis;
+
+    private final double hedgePercentile;
+    private final Executor hedgeExecutor;
+
+    private final LoadingCache<String, HostState> hosts;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private ResilientHttpTransport(Builder builder) {
+        this.delegate = builder.delegate;
+        this.retryPolicy = builder.retryPolicy;
+        this.failureThreshold = builder.failureThreshold;
+        this.openTimeMillis = builder.openTimeMillis;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.hedgeExecutor = builder.hedgeExecutor;
+        this.hosts = CacheBuilder.newBuilder().
+                expireAfterAccess(builder.hostIdleTimeoutNanos, TimeUnit.NANOSECONDS).
+                build(CacheLoader.from(key -> new HostState()));
+    }
+
+    public static Builder builder(HttpTransport delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * Retries and circuit breaking only. Hedging is not applicable to streamed responses.
+     */
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        return withRetries(request, (req, host) -> delegate.open(req), StreamedHttpResponse::getStatusCode,
+                response -> response.getHeader("Retry-After"), ResilientHttpTransport::closeQuietly);
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        return withRetries(request, this::executeHedged, HttpResponse::getStatusCode,
+                response -> response.getHeader("Retry-After"), response -> {});
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return delegate.getStats();
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param url any URL of the host in question.
+     *
+     * @return the circuit breaker of the host of the specified URL,
+     *         or null if no requests were sent to that host (recently).
+     */
+    public CircuitBreaker getCircuitBreaker(String url) throws IOException {
+        HostState host = hosts.getIfPresent(hostKey(Check.notNull(url, "url cannot be null")));
+        return (host == null) ? null : host.circuitBreaker;
+    }
+
+    /**
+     * @return number of attempts made in addition to the first ones.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return number of hedged requests sent.
+     */
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    /**
+     * @return number of requests rejected by open circuit breakers.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    private <R> R withRetries(HttpRequest request, Attempt<R> attempt, ToIntFunction<R> statusCode,
+                              Function<R, String> retryAfter, Consumer<R> discard) throws IOException {
+        Check.notNull(request, "request cannot be null");
+
+        String hostKey = hostKey(request.getURL());
+        HostState host = hosts.getUnchecked(hostKey);
+        int maxAttempts = retryPolicy.getMaxAttempts(request);
+
+        for (int attemptNo = 1; ; attemptNo++) {
+            if (!(host.circuitBreaker.tryAcquire())) {
+                rejectedRequests.increment();
+                throw new CircuitBreakerOpenException("circuit breaker is open for " + hostKey);
+            }
+
+            R result;
+
+            try {
+                result = attempt.perform(request, host);
+            } catch (RateLimitExceededException | CircuitBreakerOpenException ex) {
+                // Rejected locally (e.g. by a RateLimitingHttpTransport or by another ResilientHttpTransport
+                // down the chain) without contacting the host - says nothing about its health, and is not
+                // going to succeed if retried right away.
+                host.circuitBreaker.onIgnored();
+                throw ex;
+            } catch (IOException ex) {
+                host.circuitBreaker.onFailure();
+
+                if ((attemptNo >= maxAttempts) || (Thread.currentThread().isInterrupted()))
+                    throw ex;
+
+                backoff(attemptNo, 0);
+                continue;
+            } catch (RuntimeException | Error ex) {
+                host.circuitBreaker.onIgnored();
+                throw ex;
+            }
+
+            int status = statusCode.applyAsInt(result);
+
+            if (status >= 500)
+                host.circuitBreaker.onFailure();
+            else
+                host.circuitBreaker.onSuccess();
+
+            if ((attemptNo >= maxAttempts) || (!(retryPolicy.isRetryableStatus(status))))
+                return result;
+
+            long minDelayMillis = retryAfterMillis(retryAfter.apply(result));
+
+            if (minDelayMillis > retryPolicy.getMaxBackoffMillis())
+                return result; // the host asks to wait longer than we are willing to
+
+            discard.accept(result);
+            backoff(attemptNo, minDelayMillis);
+        }
+    }
+
+    /**
+     * @return the delay specified by a Retry-After header in milliseconds (rounded up),
+     *         or 0 if there's no (valid) header.
+     */
+    private static long retryAfterMillis(String retryAfter) {
+        long nanos = (retryAfter == null) ? -1 : RateLimitingHttpTransport.parseRetryAfterNanos(retryAfter);
+        return (nanos <= 0) ? 0 : (nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private void backoff(int failedAttempt, long minDelayMillis) throws IOException {
+        retries.increment();
+
+        try {
+            Thread.sleep(Math.max(minDelayMillis, retryPolicy.computeBackoffMillis(failedAttempt)));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry a request");
+        }
+    }
+
+    private HttpResponse executeHedged(HttpRequest request, HostState host) throws IOException {
+        long startNanos = System.nanoTime();
+        long hedgeDelayNanos = ((hedgePercentile > 0.0) && (request.getRequestMethod() == RequestMethod.GET))
+                ? host.latencies.percentile(hedgePercentile) : -1;
+
+        if (hedgeDelayNanos < 0)
+            return host.latencies.record(delegate.execute(request), startNanos);
+
+        CompletableFuture<HttpResponse> primary = delegate.executeAsync(request, hedgeExecutor);
+
+        try {
+            return host.latencies.record(primary.get(hedgeDelayNanos, TimeUnit.NANOSECONDS), startNanos);
+        } catch (TimeoutException ex) {
+            hedgedRequests.increment();
+            CompletableFuture<HttpResponse> hedge = delegate.executeAsync(request, hedgeExecutor);
+
+            return host.latencies.record(await(firstSuccessful(primary, hedge)), startNanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a response");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private static CompletableFuture<HttpResponse> firstSuccessful(CompletableFuture<HttpResponse> a,
+                                                                   CompletableFuture<HttpResponse> b) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+
+        BiConsumer<HttpResponse, Throwable> handler = (response, t) -> {
+            if (t == null)
+                result.complete(response);
+            else if (failures.incrementAndGet() == 2)
+                result.completeExceptionally(t);
+        };
+
+        a.whenComplete(handler);
+        b.whenComplete(handler);
+
+        return result;
+    }
+
+    private static HttpResponse await(CompletableFuture<HttpResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a response");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+
+        if (cause instanceof IOException)
+            return (IOException) cause;
+
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+
+        if (cause instanceof Error)
+            throw (Error) cause;
+
+        return new IOException("request failed", cause);
+    }
+
+    private static void closeQuietly(StreamedHttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * @return scheme, host and port of the specified URL, e.g. "https://example.com:8443".
+     */
+    static String hostKey(String url) throws IOException {
+        URL parsed = new URL(url);
+        return parsed.getProtocol() + "://" + parsed.getAuthority();
+    }
+
+    private interface Attempt<R> {
+        R perform(HttpRequest request, HostState host) throws IOException;
+    }
+
+    private final class HostState {
+        private final CircuitBreaker circuitBreaker = new CircuitBreaker(failureThreshold, openTimeMillis);
+        private final LatencyWindow latencies = new LatencyWindow();
+    }
+
+    /**
+     * Response times of the last WINDOW_SIZE successful requests to a host.
+     */
+    private static final class LatencyWindow {
+        private static final int WINDOW_SIZE = 128;
+        private static final int MIN_SAMPLES = 20;
+        private static final int RECOMPUTE_INTERVAL = 16;
+
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        private long[] sorted;
+        private int recordsSinceSort;
+
+        synchronized HttpResponse record(HttpResponse response, long startNanos) {
+            if (response.getStatusCode() < 500) {
+                samples[next] = System.nanoTime() - startNanos;
+                next = (next + 1) % WINDOW_SIZE;
+                count = Math.min(count + 1, WINDOW_SIZE);
+                recordsSinceSort++;
+            }
+
+            return response;
+        }
+
+        /**
+         * @return the specified percentile of recorded response times in nanoseconds,
+         *         or -1 if there are not enough samples yet.
+         */
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES)
+                return -1;
+
+            // Sorting 128 longs is nothing compared to an HTTP request, but there's
+            // still no need to do it on every request.
+            if ((sorted == null) || (recordsSinceSort >= RECOMPUTE_INTERVAL)) {
+                sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                recordsSinceSort = 0;
+            }
+
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    public static final class Builder {
+        private final HttpTransport delegate;
+
+        private RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+        private int failureThreshold = 5;
+        private long openTimeMillis = TimeUnit.SECONDS.toMillis(30);
+
+        private double hedgePercentile;
+        private Executor hedgeExecutor;
+
+        private long hostIdleTimeoutNanos = TimeUnit.MINUTES.toNanos(10);
+
+        Builder(HttpTransport delegate) {
+            this.delegate = Check.notNull(delegate, "delegate cannot be null");
+        }
+
+        public ResilientHttpTransport build() {
+            if (hedgeExecutor == null)
+                hedgeExecutor = Networking.Http.getAsyncExecutor();
+
+            return new ResilientHttpTransport(this);
+        }
+
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = Check.notNull(retryPolicy, "retryPolicy cannot be null");
+            return this;
+        }
+
+        /**
+         * @param failureThreshold number of consecutive failures that opens the circuit.
+         * @param openTime for how long the circuit stays open before a trial request is let through.
+         */
+        public Builder circuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+            if (failureThreshold < 1)
+                throw new IllegalArgumentException("failureThreshold must be a positive integer");
+
+            if (openTime < 0)
+                throw new IllegalArgumentException("openTime cannot be negative");
+
+            this.failureThreshold = failureThreshold;
+            this.openTimeMillis = Check.notNull(unit, "unit cannot be null").toMillis(openTime);
+
+            return this;
+        }
+
+        /**
+         * Disable circuit breaking altogether.
+         */
+        public Builder noCircuitBreaker() {
+            this.failureThreshold = Integer.MAX_VALUE;
+            this.openTimeMillis = 0;
+
+            return this;
+        }
+
+        /**
+         * Send a hedged request if a GET request takes longer than the specified
+         * percentile (e.g. 0.95) of recent response times of its host. Hedging is
+         * disabled by default, and is only active once there's enough samples.
+         *
+         * Note that hedged requests do increase the load on the server.
+         */
+        public Builder hedgeAfterPercentile(double percentile) {
+            if ((Double.isNaN(percentile)) || (percentile <= 0.0) || (percentile >= 1.0))
+                throw new IllegalArgumentException("percentile must be between 0 and 1 (exclusive)");
+
+            this.hedgePercentile = percentile;
+            return this;
+        }
+
+        /**
+         * Executor to run hedged (and the corresponding primary) requests on.
+         * Defaults to Networking.Http#getAsyncExecutor().
+         */
+        public Builder hedgeExecutor(Executor hedgeExecutor) {
+            this.hedgeExecutor = Check.notNull(hedgeExecutor, "hedgeExecutor cannot be null");
+            return this;
+        }
+
+        /**
+         * For how long the state of a host (its circuit breaker and response times)
+         * is kept after the last request to it. Defaults to 10 minutes.
+         */
+        public Builder hostIdleTimeout(long idleTimeout, TimeUnit unit) {
+            if (idleTimeout < 1)
+                throw new IllegalArgumentException("idleTimeout must be positive");
+
+            this.hostIdleTimeoutNanos = Check.notNull(unit, "unit cannot be null").toNanos(idleTimeout);
+            return this;
+        }
+    }
+
+}
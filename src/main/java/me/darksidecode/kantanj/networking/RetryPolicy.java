@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import lombok.Getter;
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines when and how many times a failed HTTP request is retried by
+ * ResilientHttpTransport, and how long to wait between the attempts.
+ *
+ * Delays grow exponentially (initialBackoff * multiplier^(attempt - 1), but never
+ * more than maxBackoff) and are fully jittered, i.e. the actual delay is a random
+ * value between zero and the computed one, so that clients failing at the same
+ * time do not retry at the same time as well.
+ *
+ * If a response with a retryable status has a Retry-After header, the next attempt
+ * is not made sooner than it asks, and if it asks to wait longer than maxBackoff,
+ * the response is returned to the caller instead of being retried.
+ *
+ * Only GET requests are retried by default, since retrying other requests
+ * may cause the same data to be submitted more than once.
+ */
+@Getter
+public class RetryPolicy {
+
+    private static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    /**
+     * Maximum number of attempts, including the first one.
+     */
+    private int maxAttempts = 3;
+
+    private long initialBackoffMillis = 100;
+
+    private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(5);
+
+    private double multiplier = 2.0;
+
+    /**
+     * Whether requests other than GET should be retried as well.
+     */
+    private boolean retryNonIdempotent;
+
+    /**
+     * Responses with these status codes are treated as failed attempts
+     * (in addition to requests failed with an I/O error).
+     */
+    private Set<Integer> retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(429, 502, 503, 504)));
+
+    public RetryPolicy() {}
+
+    private RetryPolicy(RetryPolicy other) {
+        this.maxAttempts = other.maxAttempts;
+        this.initialBackoffMillis = other.initialBackoffMillis;
+        this.maxBackoffMillis = other.maxBackoffMillis;
+        this.multiplier = other.multiplier;
+        this.retryNonIdempotent = other.retryNonIdempotent;
+        this.retryableStatusCodes = other.retryableStatusCodes; // unmodifiable
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy();
+    }
+
+    /**
+     * @return a policy that never retries anything.
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return maximum number of attempts allowed for the specified request.
+     */
+    public int getMaxAttempts(HttpRequest request) {
+        return ((retryNonIdempotent) || (request.getRequestMethod() == RequestMethod.GET)) ? maxAttempts : 1;
+    }
+
+    public boolean isRetryableStatus(int statusCode) {
+        return retryableStatusCodes.contains(statusCode);
+    }
+
+    /**
+     * @param attempt number of the attempt that has just failed, starting from 1.
+     *
+     * @return a randomized delay before the next attempt, in milliseconds.
+     */
+    public long computeBackoffMillis(int attempt) {
+        double backoff = initialBackoffMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+        long bound = (long) Math.min(maxBackoffMillis, backoff);
+
+        return (bound > 0) ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+
+    public static final class Builder {
+        private final RetryPolicy policy = new RetryPolicy();
+
+        Builder() {}
+
+        /**
+         * @return a new instance each time, so that further changes to this builder
+         *         don't affect policies that have already been built (and maybe used).
+         */
+        public RetryPolicy build() {
+            if (policy.initialBackoffMillis > policy.maxBackoffMillis)
+                throw new IllegalArgumentException("initialBackoff cannot be greater than maxBackoff");
+
+            return new RetryPolicy(policy);
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1)
+                throw new IllegalArgumentException("maxAttempts must be a positive integer");
+
+            policy.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder initialBackoff(long initialBackoff, TimeUnit unit) {
+            policy.initialBackoffMillis = toMillis(initialBackoff, unit, "initialBackoff");
+            return this;
+        }
+
+        public Builder maxBackoff(long maxBackoff, TimeUnit unit) {
+            policy.maxBackoffMillis = toMillis(maxBackoff, unit, "maxBackoff");
+            return this;
+        }
+
+        public Builder multiplier(double multiplier) {
+            if ((Double.isNaN(multiplier)) || (multiplier < 1.0))
+                throw new IllegalArgumentException("multiplier cannot be less than 1");
+
+            policy.multiplier = multiplier;
+            return this;
+        }
+
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            policy.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        public Builder retryableStatusCodes(int... statusCodes) {
+            Check.notNull(statusCodes, "statusCodes cannot be null");
+            Set<Integer> codes = new HashSet<>();
+
+            for (int code : statusCodes)
+                codes.add(code);
+
+            policy.retryableStatusCodes = Collections.unmodifiableSet(codes);
+            return this;
+        }
+
+        private static long toMillis(long duration, TimeUnit unit, String name) {
+            if (duration < 0)
+                throw new IllegalArgumentException(name + " cannot be negative");
+
+            return Check.notNull(unit, "unit cannot be null").toMillis(duration);
+        }
+    }
+
+}
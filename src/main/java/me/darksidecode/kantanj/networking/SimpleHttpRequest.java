@@ -20,6 +20,7 @@ import me.darksidecode.kantanj.formatting.Formatting;
 import me.darksidecode.kantanj.types.Check;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class SimpleHttpRequest implements HttpRequest {
@@ -35,7 +36,11 @@ public class SimpleHttpRequest implements HttpRequest {
 
     private String path;
 
-    private final Map<String, String> queryParams = new HashMap<>();
+    /**
+     * Query params are rendered in the order they were added in,
+     * so the same request always produces the same URL.
+     */
+    private final Map<String, String> queryParams = new LinkedHashMap<>();
 
     private final Map<String, String> requestProperties = new HashMap<>();
 
@@ -45,6 +50,13 @@ public class SimpleHttpRequest implements HttpRequest {
     private boolean followRedirects;
     private boolean doInput = true, doOutput;
 
+    private boolean acceptCompressed = true;
+
+    /**
+     * Rendered URL, computed lazily and reset whenever any of its parts change.
+     */
+    private String url;
+
     public SimpleHttpRequest done() {
         return this;
     }
@@ -77,6 +89,7 @@ public class SimpleHttpRequest implements HttpRequest {
 
         this.baseUrl = (baseUrl.endsWith("/"))
                 ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        url = null;
         return this;
     }
 
@@ -96,6 +109,7 @@ public class SimpleHttpRequest implements HttpRequest {
         }
 
         this.path = path;
+        url = null;
         return this;
     }
 
@@ -105,6 +119,7 @@ public class SimpleHttpRequest implements HttpRequest {
 
         queryParams.put(queryParam, Check.notNull(
                 value, "queryParam value cannot be null").toString());
+        url = null;
         return this;
     }
 
@@ -174,6 +189,11 @@ public class SimpleHttpRequest implements HttpRequest {
         return this;
     }
 
+    public SimpleHttpRequest acceptCompressed(boolean acceptCompressed) {
+        this.acceptCompressed = acceptCompressed;
+        return this;
+    }
+
     @Override
     public String getUserAgent() {
         Check.state(userAgent == null, "userAgent not set");
@@ -222,15 +242,29 @@ public class SimpleHttpRequest implements HttpRequest {
         return doOutput;
     }
 
+    @Override
+    public boolean shouldAcceptCompressed() {
+        return acceptCompressed;
+    }
+
     @Override
     public String getURL() throws IllegalStateException {
         Check.state(baseUrl == null, "baseUrl not set");
         Check.state(path == null, "path not set");
 
-        StringBuilder url = new StringBuilder(baseUrl + '/' + path);
+        if (url != null)
+            return url;
+
+        int length = baseUrl.length() + 1 + path.length();
+
+        for (Map.Entry<String, String> queryParam : queryParams.entrySet())
+            length += queryParam.getKey().length() + queryParam.getValue().length() + 2;
+
+        StringBuilder url = new StringBuilder(length).
+                append(baseUrl).append('/').append(path);
         boolean firstQParam = true;
 
-        for (String queryParam : queryParams.keySet()) {
+        for (Map.Entry<String, String> queryParam : queryParams.entrySet()) {
             char appendChar = '&';
 
             if (firstQParam) {
@@ -239,12 +273,12 @@ public class SimpleHttpRequest implements HttpRequest {
             }
 
             url.append(appendChar).
-                append(queryParam).
+                append(queryParam.getKey()).
                 append('=').
-                append(queryParams.get(queryParam));
+                append(queryParam.getValue());
         }
 
-        return url.toString();
+        return this.url = url.toString();
     }
 
     public GetHttpRequest asGetRequest() {
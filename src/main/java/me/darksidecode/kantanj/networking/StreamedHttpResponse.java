@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import lombok.Getter;
+import me.darksidecode.kantanj.types.Check;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An HTTP response whose body has not been read yet.
+ *
+ * Must always be closed after use (preferably using try-with-resources),
+ * even if the body is not needed, to release the underlying connection.
+ */
+public class StreamedHttpResponse implements Closeable {
+
+    @Getter
+    private final String url;
+
+    @Getter
+    private final int statusCode;
+
+    /**
+     * Response headers with case-insensitive names.
+     */
+    @Getter
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Response body stream, or an empty stream if there is no body.
+     */
+    @Getter
+    private final InputStream body;
+
+    private final Closeable onClose;
+
+    private boolean closed;
+
+    /**
+     * @param onClose called once when this response is closed, after the body
+     *                stream is closed (e.g. to release the connection); may be null.
+     */
+    public StreamedHttpResponse(String url, int statusCode, Map<String, List<String>> headers,
+                                InputStream body, Closeable onClose) {
+        this.url = Check.notNull(url, "url cannot be null");
+        this.statusCode = statusCode;
+        this.headers = caseInsensitive(headers);
+        this.body = Check.notNull(body, "body cannot be null");
+        this.onClose = onClose;
+    }
+
+    static Map<String, List<String>> caseInsensitive(Map<String, List<String>> headers) {
+        Map<String, List<String>> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        if (headers != null)
+            headers.forEach((name, values) -> {
+                if (name != null) // HttpURLConnection puts the status line under the null key
+                    caseInsensitive.put(name, values);
+            });
+
+        return Collections.unmodifiableMap(caseInsensitive);
+    }
+
+    /**
+     * @return first value of the specified header, or null if there is no such header.
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(Check.notNull(name, "name cannot be null"));
+        return ((values == null) || (values.isEmpty())) ? null : values.get(0);
+    }
+
+    /**
+     * @return value of the Content-Length header, or -1 if it is absent or invalid.
+     */
+    public long getContentLength() {
+        String contentLength = getHeader("Content-Length");
+
+        if (contentLength == null)
+            return -1;
+
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return true if and only if the status code is 2xx.
+     */
+    public boolean isSuccessful() {
+        return (statusCode >= 200) && (statusCode < 300);
+    }
+
+    /**
+     * Read the whole body into memory. Does not close this response.
+     */
+    public HttpResponse readFully() throws IOException {
+        return new HttpResponse(url, statusCode, headers, IOUtils.toByteArray(body));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+
+        try {
+            body.close();
+        } finally {
+            if (onClose != null)
+                onClose.close();
+        }
+    }
+
+}
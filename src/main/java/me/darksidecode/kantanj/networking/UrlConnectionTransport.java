@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.types.Check;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default HttpTransport based on HttpURLConnection.
+ *
+ * Connections are never disconnected explicitly. Instead, response bodies are
+ * always closed (and drained, if not read till the end, by the JDK), which returns the underlying connection to the
+ * JDK's per-host keep-alive cache, so subsequent requests to the same host skip
+ * the TCP and TLS handshakes.
+ *
+ * The keep-alive cache is configured JVM-wide via system properties, see
+ * maxConnectionsPerHost(int).
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private final HttpTransportStats stats = new HttpTransportStats();
+
+    /**
+     * The JDK keep-alive cache uses the SSLSocketFactory as a part of the cache key,
+     * so the very same instance must be used for all connections to make reuse possible.
+     */
+    private final CountingSSLSocketFactory sslSocketFactory;
+
+    public UrlConnectionTransport() {
+        this(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    public UrlConnectionTransport(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = new CountingSSLSocketFactory(
+                Check.notNull(sslSocketFactory, "sslSocketFactory cannot be null"), stats);
+    }
+
+    /**
+     * Set the maximum number of idle connections kept alive per host (JDK default is 5).
+     * This is a JVM-wide setting that only takes effect if set before the first
+     * HttpURLConnection is opened.
+     */
+    public static void maxConnectionsPerHost(int maxConnections) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be a positive integer");
+
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+    }
+
+    @Override
+    public StreamedHttpResponse open(HttpRequest request) throws IOException {
+        HttpURLConnection con = Networking.Http.openConnection(request);
+
+        // The response must always be read, even if the caller is not interested in it:
+        // otherwise the request may not be sent at all, and the connection cannot be reused.
+        con.setDoInput(true);
+
+        if ((request.shouldAcceptCompressed())
+                && (!(request.getRequestProperties().containsKey("Accept-Encoding"))))
+            con.setRequestProperty("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+
+        boolean secured = con instanceof HttpsURLConnection;
+
+        if (secured)
+            ((HttpsURLConnection) con).setSSLSocketFactory(sslSocketFactory);
+
+        stats.requestSent(secured);
+
+        try {
+            if (request instanceof PostHttpRequest)
+                try (OutputStream outputStream = con.getOutputStream()) {
+                    outputStream.write(((PostHttpRequest) request).getPostData());
+                }
+
+            int statusCode = con.getResponseCode();
+            InputStream body = (statusCode >= 400) ? con.getErrorStream() : con.getInputStream();
+
+            if (body == null)
+                body = new ByteArrayInputStream(new byte[0]);
+
+            Map<String, List<String>> headers = con.getHeaderFields();
+            String contentEncoding = con.getContentEncoding();
+
+            if ((request.shouldAcceptCompressed()) && (HttpCompression.isSupported(contentEncoding))) {
+                body = HttpCompression.decode(contentEncoding, body);
+                headers = HttpCompression.decodedHeaders(headers);
+            }
+
+            // Closing the body stream (even if it was not read till the end) is what
+            // lets HttpURLConnection put the connection back to the keep-alive cache.
+            return new StreamedHttpResponse(request.getURL(), statusCode,
+                    headers, body, stats::connectionReleased);
+        } catch (IOException ex) {
+            stats.requestFailed();
+            stats.connectionDiscarded();
+            con.disconnect();
+
+            throw ex;
+        }
+    }
+
+    @Override
+    public HttpTransportStats getStats() {
+        return stats;
+    }
+
+    private static final class CountingSSLSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+        private final HttpTransportStats stats;
+
+        private CountingSSLSocketFactory(SSLSocketFactory delegate, HttpTransportStats stats) {
+            this.delegate = delegate;
+            this.stats = stats;
+        }
+
+        private Socket opened(Socket socket) {
+            stats.connectionOpened();
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return opened(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return opened(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return opened(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return opened(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return opened(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port,
+                                   InetAddress localAddress, int localPort) throws IOException {
+            return opened(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
+}
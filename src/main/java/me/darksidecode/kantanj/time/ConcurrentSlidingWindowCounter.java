@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free counterpart of SlidingWindowCounter for counters updated by many threads at once.
+ *
+ * The window is split into a fixed number of time buckets, each counting its events with
+ * a LongAdder, so concurrent increments neither lock nor contend on a single memory location.
+ * A bucket is replaced (the only allocation) once per window, when time wraps around to it.
+ *
+ * The price is precision: events are only tracked with the granularity of a bucket, so the
+ * count covers the last (window - bucket length) to (window) of time. More buckets mean
+ * better precision, but slower counting, which sums all buckets. If the count is needed on
+ * every increment and contention is low, SlidingWindowCounter is more suitable.
+ */
+public class ConcurrentSlidingWindowCounter {
+
+    private static final int DEFAULT_BUCKETS = 10;
+
+    private final long bucketNanos;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public ConcurrentSlidingWindowCounter(long window, TimeUnit unit) {
+        this(window, unit, DEFAULT_BUCKETS);
+    }
+
+    public ConcurrentSlidingWindowCounter(long window, TimeUnit unit, int buckets) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be positive");
+
+        if (buckets < 1)
+            throw new IllegalArgumentException("buckets must be a positive integer");
+
+        long windowNanos = Check.notNull(unit, "unit cannot be null").toNanos(window);
+
+        if (windowNanos < buckets)
+            throw new IllegalArgumentException("window is too short for " + buckets + " buckets");
+
+        this.bucketNanos = windowNanos / buckets;
+        this.buckets = new AtomicReferenceArray<>(buckets);
+
+        for (int i = 0; i < buckets; i++)
+            this.buckets.set(i, new Bucket(Long.MIN_VALUE));
+    }
+
+    /**
+     * Record an event that happened now.
+     */
+    public void increment() {
+        long epoch = Math.floorDiv(System.nanoTime(), bucketNanos);
+        int index = (int) Math.floorMod(epoch, (long) buckets.length());
+        Bucket bucket = buckets.get(index);
+
+        while (bucket.epoch != epoch) {
+            if (bucket.epoch > epoch) {
+                // Overtaken by a thread a whole window ahead (this one must have been
+                // descheduled for that long); the event is out of the window already.
+                return;
+            }
+
+            Bucket fresh = new Bucket(epoch);
+
+            if (buckets.compareAndSet(index, bucket, fresh))
+                bucket = fresh;
+            else
+                bucket = buckets.get(index); // replaced by another thread
+        }
+
+        bucket.count.increment();
+    }
+
+    /**
+     * @return the number of events within the window (not an atomic snapshot
+     *         if the counter is being updated concurrently).
+     */
+    public long count() {
+        long oldestEpoch = Math.floorDiv(System.nanoTime(), bucketNanos) - buckets.length() + 1;
+        long sum = 0;
+
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+
+            if (bucket.epoch >= oldestEpoch)
+                sum += bucket.count.sum();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Record an event that happened now.
+     *
+     * @return the number of events within the window, including this one.
+     */
+    public long incrementAndCount() {
+        increment();
+        return count();
+    }
+
+    public long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(bucketNanos * buckets.length());
+    }
+
+    private static final class Bucket {
+        /**
+         * Index of the time interval this bucket counts events of (System.nanoTime() / bucketNanos).
+         */
+        private final long epoch;
+
+        private final LongAdder count = new LongAdder();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+}
@@ -16,40 +16,25 @@
 
 package me.darksidecode.kantanj.time;
 
-import me.darksidecode.kantanj.types.Check;
-
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * @deprecated use SlidingWindowCounter, which this class now delegates to.
+ */
+@Deprecated
 public class ExpiringList {
 
-    private final long entryLifespanMillis;
-
-    private final List<Long> entries;
-
-    private final Object lock = new Object();
+    private final SlidingWindowCounter counter;
 
     public ExpiringList(long singleEntryLifespan, TimeUnit lifespanUnit) {
         if (singleEntryLifespan < 1)
             throw new IllegalArgumentException("invalid singleEntryLifespan: " + singleEntryLifespan);
 
-        entryLifespanMillis = Check.notNull(lifespanUnit,
-                "lifespanUnit cannot be null").toMillis(singleEntryLifespan);
-        entries = new ArrayList<>();
+        counter = new SlidingWindowCounter(singleEntryLifespan, lifespanUnit);
     }
 
     public int updateAndCount() {
-        synchronized (lock) {
-            List<Long> expired = new ArrayList<>();
-            entries.stream().filter(e ->
-                    System.currentTimeMillis() > (e + entryLifespanMillis)).forEach(expired::add);
-
-            expired.forEach(entries::remove);
-            entries.add(System.currentTimeMillis());
-
-            return entries.size();
-        }
+        return counter.incrementAndCount();
     }
 
     /**
@@ -62,9 +47,7 @@ public class ExpiringList {
      */
     @Deprecated
     public int count() {
-        synchronized (lock) {
-            return entries.size();
-        }
+        return counter.countWithoutEviction();
     }
 
 }
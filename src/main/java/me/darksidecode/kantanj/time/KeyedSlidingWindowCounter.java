@@ -0,0 +1,233 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding-window event counters for many keys at once, e.g. requests per client IP
+ * in last minute for rate limiting.
+ *
+ * Each key only takes a fixed array of per-bucket counts (the window is split into a fixed
+ * number of time buckets, so events are tracked with the granularity of a bucket, like in
+ * ConcurrentSlidingWindowCounter). Keys that had no events within the window are evicted
+ * automatically: at most once per window, one of the callers sweeps the map and removes them.
+ *
+ * Thread-safe. Updates of different keys don't block each other, and updating a key that
+ * is already tracked allocates nothing.
+ */
+public class KeyedSlidingWindowCounter<K> {
+
+    private static final int DEFAULT_BUCKETS = 10;
+
+    private final long bucketNanos;
+
+    private final int bucketCount;
+
+    private final Map<K, Window> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextSweepEpoch;
+
+    public KeyedSlidingWindowCounter(long window, TimeUnit unit) {
+        this(window, unit, DEFAULT_BUCKETS);
+    }
+
+    public KeyedSlidingWindowCounter(long window, TimeUnit unit, int buckets) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be positive");
+
+        if (buckets < 1)
+            throw new IllegalArgumentException("buckets must be a positive integer");
+
+        long windowNanos = Check.notNull(unit, "unit cannot be null").toNanos(window);
+
+        if (windowNanos < buckets)
+            throw new IllegalArgumentException("window is too short for " + buckets + " buckets");
+
+        this.bucketNanos = windowNanos / buckets;
+        this.bucketCount = buckets;
+        this.nextSweepEpoch = new AtomicLong(currentEpoch() + buckets);
+    }
+
+    /**
+     * Record an event for the specified key that happened now.
+     *
+     * @return the number of events for the specified key within the window, including this one.
+     */
+    public long incrementAndCount(K key) {
+        Check.notNull(key, "key cannot be null");
+        long epoch = currentEpoch();
+        sweepIfDue(epoch);
+
+        while (true) {
+            Window window = windows.get(key);
+
+            if (window == null) {
+                Window created = new Window(bucketCount, epoch);
+                window = windows.putIfAbsent(key, created);
+
+                if (window == null)
+                    window = created;
+            }
+
+            synchronized (window) {
+                if (window.evicted)
+                    continue; // evicted concurrently - start over with a new window
+
+                window.advance(epoch);
+                window.buckets[(int) Math.floorMod(window.epoch, (long) bucketCount)]++;
+
+                return window.sum();
+            }
+        }
+    }
+
+    /**
+     * @return the number of events for the specified key within the window
+     *         (zero for keys that are not tracked).
+     */
+    public long count(K key) {
+        Window window = windows.get(Check.notNull(key, "key cannot be null"));
+
+        if (window == null)
+            return 0;
+
+        synchronized (window) {
+            if (window.evicted)
+                return 0;
+
+            window.advance(currentEpoch());
+            return window.sum();
+        }
+    }
+
+    /**
+     * Stop tracking the specified key (e.g. when the client is banned or disconnected).
+     */
+    public void remove(K key) {
+        Window window = windows.remove(Check.notNull(key, "key cannot be null"));
+
+        if (window != null)
+            synchronized (window) {
+                window.evicted = true;
+            }
+    }
+
+    /**
+     * @return the number of currently tracked keys (including idle ones not evicted yet).
+     */
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Remove all keys that had no events within the window right now,
+     * without waiting for the automatic eviction.
+     */
+    public void evictIdle() {
+        long epoch = currentEpoch();
+        Iterator<Map.Entry<K, Window>> it = windows.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<K, Window> entry = it.next();
+            Window window = entry.getValue();
+
+            synchronized (window) {
+                window.advance(epoch);
+
+                if (window.sum() == 0) {
+                    window.evicted = true;
+                    windows.remove(entry.getKey(), window);
+                }
+            }
+        }
+    }
+
+    public long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(bucketNanos * bucketCount);
+    }
+
+    private void sweepIfDue(long epoch) {
+        long due = nextSweepEpoch.get();
+
+        // Only the thread that manages to move the deadline sweeps.
+        if ((epoch >= due) && (nextSweepEpoch.compareAndSet(due, epoch + bucketCount)))
+            evictIdle();
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(System.nanoTime(), bucketNanos);
+    }
+
+    /**
+     * Per-key state, guarded by its own monitor.
+     */
+    private static final class Window {
+        /**
+         * Event counts; bucket of epoch E is at index (E mod length).
+         */
+        private final long[] buckets;
+
+        /**
+         * Epoch (System.nanoTime() / bucketNanos) of the most recent bucket.
+         */
+        private long epoch;
+
+        private boolean evicted;
+
+        private Window(int bucketCount, long epoch) {
+            this.buckets = new long[bucketCount];
+            this.epoch = epoch;
+        }
+
+        /**
+         * Reset buckets of epochs that have left the window since the last update.
+         */
+        private void advance(long now) {
+            long elapsed = now - epoch;
+
+            if (elapsed <= 0)
+                return;
+
+            if (elapsed >= buckets.length)
+                Arrays.fill(buckets, 0L);
+            else
+                for (long e = epoch + 1; e <= now; e++)
+                    buckets[(int) Math.floorMod(e, (long) buckets.length)] = 0L;
+
+            epoch = now;
+        }
+
+        private long sum() {
+            long sum = 0;
+
+            for (long count : buckets)
+                sum += count;
+
+            return sum;
+        }
+    }
+
+}
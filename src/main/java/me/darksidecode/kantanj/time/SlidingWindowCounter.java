@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import me.darksidecode.kantanj.types.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts events that happened within a sliding time window (e.g. "requests in last minute").
+ *
+ * Event times are kept in a circular queue of primitive longs, oldest first, so each event
+ * is added and evicted exactly once: incrementAndCount() and count() take amortized O(1)
+ * time and allocate nothing (except for when the queue has to grow or shrink). The queue
+ * grows to fit the peak number of events within the window, and is halved again once no
+ * more than a quarter of it is in use. Times are measured with System.nanoTime(), so the
+ * count is not affected by system clock adjustments.
+ *
+ * Thread-safe; the count is always exact.
+ */
+public class SlidingWindowCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long windowNanos;
+
+    private final Object lock = new Object();
+
+    /**
+     * Event times (System.nanoTime()). Capacity is always a power of two.
+     */
+    private long[] events = new long[INITIAL_CAPACITY];
+
+    private int head;
+
+    private int size;
+
+    public SlidingWindowCounter(long window, TimeUnit unit) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be positive");
+
+        windowNanos = Check.notNull(unit, "unit cannot be null").toNanos(window);
+    }
+
+    /**
+     * Record an event that happened now.
+     *
+     * @return the number of events within the window, including this one.
+     */
+    public int incrementAndCount() {
+        synchronized (lock) {
+            // Read the time under the lock, so that events are always queued in time order.
+            long now = System.nanoTime();
+            evictExpired(now);
+
+            if (size == events.length)
+                grow();
+
+            events[(head + size) & (events.length - 1)] = now;
+            return ++size;
+        }
+    }
+
+    /**
+     * @return the number of events within the window.
+     */
+    public int count() {
+        synchronized (lock) {
+            evictExpired(System.nanoTime());
+            return size;
+        }
+    }
+
+    /**
+     * @return how long (in milliseconds, rounded up) it will take for the oldest
+     *         event within the window to leave it, or 0 if there are no events.
+     */
+    public long millisUntilNextExpiry() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            evictExpired(now);
+
+            if (size == 0)
+                return 0;
+
+            long nanos = events[head] + windowNanos - now + 1;
+            return (nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * @return the number of events recorded, including ones that have already
+     *         left the window, but were not evicted yet.
+     */
+    int countWithoutEviction() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    public long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    private void evictExpired(long now) {
+        int mask = events.length - 1;
+
+        while ((size > 0) && (now - events[head] > windowNanos)) {
+            head = (head + 1) & mask;
+            size--;
+        }
+
+        if ((events.length > INITIAL_CAPACITY) && (size <= events.length / 4))
+            resize(events.length / 2);
+    }
+
+    private void grow() {
+        resize(events.length * 2);
+    }
+
+    private void resize(int capacity) {
+        long[] resized = new long[capacity];
+        int tail = Math.min(size, events.length - head);
+
+        System.arraycopy(events, head, resized, 0, tail);
+        System.arraycopy(events, 0, resized, tail, size - tail);
+
+        events = resized;
+        head = 0;
+    }
+
+}
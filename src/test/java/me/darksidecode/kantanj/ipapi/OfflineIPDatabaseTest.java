@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.ipapi;
+
+import me.darksidecode.kantanj.networking.CompactIP;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class OfflineIPDatabaseTest {
+
+    private static OfflineIPDatabase load(String... lines) throws IOException {
+        return OfflineIPDatabase.load(new StringReader(String.join("\n", lines)));
+    }
+
+    @Test
+    public void resolvesIPv4Ranges() throws IOException {
+        OfflineIPDatabase db = load(
+                "rangeStart,rangeEnd,countryCode,country,regionName,city,lat,lon,timezone",
+                "1.0.0.0,1.0.0.255,AU,Australia,Queensland,Brisbane,-27.47,153.02,Australia/Brisbane",
+                "# comment",
+                "",
+                "\"8.8.8.0\",\"8.8.8.255\",\"US\",\"United States\",\"California\",\"Mountain View\",37.4,-122.1,-"
+        );
+
+        assertEquals(2, db.getSize());
+
+        IPAddress info = db.resolve("1.0.0.42", IPAPILanguage.ENGLISH);
+        assertNotNull(info);
+        assertEquals("AU", info.getCountryCode());
+        assertEquals("Brisbane", info.getCity());
+        assertEquals(-27.47f, info.getLat(), 0.001f);
+        assertEquals("1.0.0.42", info.getQuery());
+
+        info = db.resolve("8.8.8.8", IPAPILanguage.ENGLISH);
+        assertNotNull(info);
+        assertEquals("Mountain View", info.getCity());
+        assertNull(info.getTimezone());
+
+        assertNull(db.resolve("1.0.1.0", IPAPILanguage.ENGLISH));
+        assertNull(db.resolve("0.255.255.255", IPAPILanguage.ENGLISH));
+        assertNull(db.resolve("example.com", IPAPILanguage.ENGLISH));
+    }
+
+    @Test
+    public void resolvesDecimalBounds() throws IOException {
+        OfflineIPDatabase db = load(
+                "16777216,16777471,AU", // 1.0.0.0 - 1.0.0.255
+                "0,4294967296,ZZ" // exceeds 32 bits, so :: - ::1:0:0
+        );
+
+        assertEquals("AU", db.resolve("1.0.0.1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("ZZ", db.resolve("::1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("ZZ", db.resolve("::1:0:0", IPAPILanguage.ENGLISH).getCountryCode());
+        assertNull(db.resolve("0.0.0.1", IPAPILanguage.ENGLISH));
+    }
+
+    @Test
+    public void resolvesIPv6Ranges() throws IOException {
+        OfflineIPDatabase db = load(
+                "2001:db8::,2001:db8::ffff,NL,Netherlands",
+                "2a00::,2a00:ffff:ffff:ffff:ffff:ffff:ffff:ffff,DE,Germany"
+        );
+
+        assertEquals("NL", db.resolve("2001:db8::1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("DE", db.resolve("2a00:1450::1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("DE", db.resolve(CompactIP.parse("2a00::"), IPAPILanguage.ENGLISH).getCountryCode());
+        assertNull(db.resolve("2001:db8::1:0", IPAPILanguage.ENGLISH));
+        assertNull(db.resolve("1.2.3.4", IPAPILanguage.ENGLISH));
+    }
+
+    @Test
+    public void treatsIPv4MappedRangesAsIPv4() throws IOException {
+        OfflineIPDatabase db = load(
+                "::ffff:10.0.0.0,::ffff:10.255.255.255,ZZ,Private",
+                "::fffe:0:0,::ffff:9.255.255.255,XX,Below", // crosses the start of ::ffff:0:0/96
+                "::ffff:11.0.0.0,::1:0:1:0,YY,Above" // crosses its end
+        );
+
+        assertEquals("ZZ", db.resolve("10.1.2.3", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("XX", db.resolve("::fffe:0:1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("XX", db.resolve("0.0.0.1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("YY", db.resolve("11.0.0.0", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals("YY", db.resolve("::1:0:0:1", IPAPILanguage.ENGLISH).getCountryCode());
+        assertEquals(5, db.getSize());
+    }
+
+    @Test
+    public void sharesIdenticalLocations() throws IOException {
+        OfflineIPDatabase db = load(
+                "1.0.0.0,1.0.0.255,AU,Australia",
+                "1.0.4.0,1.0.7.255,AU,Australia"
+        );
+
+        IPAddress first = db.resolve("1.0.0.1", IPAPILanguage.ENGLISH);
+        IPAddress second = db.resolve("1.0.4.1", IPAPILanguage.ENGLISH);
+
+        assertEquals(first.getCountry(), second.getCountry());
+        assertEquals("1.0.4.1", second.getQuery());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedFirstLine() throws IOException {
+        load("1.0.0.0,not an ip,AU");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvertedRange() throws IOException {
+        load("1.0.0.255,1.0.0.0,AU");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOverlappingIPv4Ranges() throws IOException {
+        load(
+                "1.0.0.0,1.0.0.255,AU",
+                "1.0.1.0,1.0.1.255,CN",
+                "1.0.0.255,1.0.0.255,JP" // shares an address with the first range
+        );
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOverlappingIPv6Ranges() throws IOException {
+        load(
+                "2001:db8::,2001:db8::ffff,NL",
+                "2001:db8::8000,2001:db8::1:0,DE"
+        );
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMissingColumns() throws IOException {
+        load("1.0.0.0,1.0.0.255");
+    }
+
+}
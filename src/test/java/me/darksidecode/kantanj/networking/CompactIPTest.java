@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.Assert.*;
+
+public class CompactIPTest {
+
+    @Test
+    public void parsesIPv4() {
+        CompactIP ip = CompactIP.parse("192.168.0.1");
+
+        assertTrue(ip.isIPv4());
+        assertEquals(0xC0A80001, ip.getIPv4());
+        assertEquals(0L, ip.getHigh());
+        assertEquals(0xFFFFC0A80001L, ip.getLow());
+        assertEquals("192.168.0.1", ip.toString());
+    }
+
+    @Test
+    public void rejectsInvalidIPv4() {
+        assertNull(CompactIP.tryParse("256.0.0.1"));
+        assertNull(CompactIP.tryParse("1.2.3"));
+        assertNull(CompactIP.tryParse("1.2.3.4.5"));
+        assertNull(CompactIP.tryParse("1..3.4"));
+        assertNull(CompactIP.tryParse("a.b.c.d"));
+        assertNull(CompactIP.tryParse(""));
+    }
+
+    @Test
+    public void parsesIPv6() {
+        CompactIP ip = CompactIP.parse("2001:db8::ff00:42:8329");
+
+        assertFalse(ip.isIPv4());
+        assertEquals(0x20010DB800000000L, ip.getHigh());
+        assertEquals(0x0000FF0000428329L, ip.getLow());
+    }
+
+    @Test
+    public void rejectsInvalidIPv6() {
+        assertNull(CompactIP.tryParse("1::2::3"));
+        assertNull(CompactIP.tryParse("1:2:3:4:5:6:7:8:9"));
+        assertNull(CompactIP.tryParse("12345::"));
+        assertNull(CompactIP.tryParse("g::"));
+        assertNull(CompactIP.tryParse(":1"));
+    }
+
+    @Test
+    public void treatsIPv4MappedAsIPv4() {
+        CompactIP mapped = CompactIP.parse("::ffff:10.0.0.1");
+
+        assertTrue(mapped.isIPv4());
+        assertEquals(CompactIP.parse("10.0.0.1"), mapped);
+        assertEquals("10.0.0.1", mapped.toString());
+    }
+
+    @Test
+    public void ignoresZoneId() {
+        assertEquals(CompactIP.parse("fe80::1"), CompactIP.parse("fe80::1%eth0"));
+    }
+
+    @Test
+    public void formatsCanonicalIPv6() {
+        assertEquals("::", CompactIP.parse("0:0:0:0:0:0:0:0").toString());
+        assertEquals("::1", CompactIP.parse("0:0::1").toString());
+        assertEquals("2001:db8::1", CompactIP.parse("2001:0DB8:0000:0000:0000:0000:0000:0001").toString());
+        // The first of equally long zero runs is shortened; a single zero group is not.
+        assertEquals("2001:db8::1:0:0:1", CompactIP.parse("2001:db8:0:0:1:0:0:1").toString());
+        assertEquals("2001:db8:0:1:1:1:1:1", CompactIP.parse("2001:db8:0:1:1:1:1:1").toString());
+    }
+
+    @Test
+    public void matchesInetAddress() throws Exception {
+        String[] ips = { "0.0.0.0", "127.0.0.1", "255.255.255.255", "::", "::1",
+                "2001:db8:85a3::8a2e:370:7334", "fe80::1:2:3:4", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff" };
+
+        for (String ip : ips) {
+            InetAddress expected = InetAddress.getByName(ip);
+            CompactIP compact = CompactIP.parse(ip);
+
+            assertEquals(ip, expected, compact.toInetAddress());
+            assertEquals(ip, compact, CompactIP.of(expected));
+            assertEquals(ip, compact, CompactIP.parse(compact.toString()));
+        }
+    }
+
+    @Test
+    public void comparesUnsigned() {
+        assertTrue(CompactIP.parse("1.2.3.4").compareTo(CompactIP.parse("200.2.3.4")) < 0);
+        assertTrue(CompactIP.parse("::1").compareTo(CompactIP.parse("ffff::")) < 0);
+        assertTrue(CompactIP.parse("::1").compareTo(CompactIP.parse("0.0.0.0")) < 0);
+        assertEquals(0, CompactIP.parse("::1").compareTo(CompactIP.ofIPv6(0L, 1L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsOnInvalid() {
+        CompactIP.parse("localhost");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getIPv4ThrowsForIPv6() {
+        CompactIP.parse("::1").getIPv4();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpCompressionTest {
+
+    private static final byte[] DATA = String.join("", Collections.nCopies(1000, "kantanj compresses well. "))
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void roundTripsGzip() throws IOException {
+        byte[] gzipped = HttpCompression.gzip(DATA);
+
+        assertTrue(gzipped.length < DATA.length);
+        assertArrayEquals(DATA, decode("gzip", gzipped));
+        assertArrayEquals(DATA, decode("x-gzip", gzipped));
+    }
+
+    @Test
+    public void decodesZlibWrappedDeflate() throws IOException {
+        assertArrayEquals(DATA, decode("deflate", deflate(DATA, false)));
+    }
+
+    @Test
+    public void decodesRawDeflate() throws IOException {
+        assertArrayEquals(DATA, decode("deflate", deflate(DATA, true)));
+    }
+
+    @Test
+    public void leavesEmptyBodiesAsIs() throws IOException {
+        assertArrayEquals(new byte[0], decode("gzip", new byte[0]));
+        assertArrayEquals(new byte[0], decode("deflate", new byte[0]));
+    }
+
+    @Test
+    public void closingTwiceIsHarmless() throws IOException {
+        InputStream in = HttpCompression.decode("deflate", new ByteArrayInputStream(deflate(DATA, false)));
+
+        in.close();
+        in.close();
+    }
+
+    @Test
+    public void supportsOnlyKnownEncodings() {
+        assertTrue(HttpCompression.isSupported("GZIP"));
+        assertTrue(HttpCompression.isSupported("deflate"));
+        assertFalse(HttpCompression.isSupported("br"));
+        assertFalse(HttpCompression.isSupported(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedEncoding() throws IOException {
+        HttpCompression.decode("br", new ByteArrayInputStream(DATA));
+    }
+
+    @Test
+    public void dropsEncodingHeaders() {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("content-encoding", Collections.singletonList("gzip"));
+        headers.put("Content-Length", Collections.singletonList("123"));
+        headers.put("Content-Type", Collections.singletonList("text/plain"));
+
+        Map<String, List<String>> decoded = HttpCompression.decodedHeaders(headers);
+
+        assertEquals(Collections.singleton("Content-Type"), decoded.keySet());
+        assertEquals(3, headers.size()); // not modified
+    }
+
+    private static byte[] decode(String encoding, byte[] body) throws IOException {
+        try (InputStream in = HttpCompression.decode(encoding, new ByteArrayInputStream(body))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater)) {
+            deflaterOut.write(data);
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+}
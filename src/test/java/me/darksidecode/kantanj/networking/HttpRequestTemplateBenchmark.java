@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import me.darksidecode.kantanj.formatting.Formatting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the URL of a typical API request with a precompiled HttpRequestTemplate
+ * versus building a SimpleHttpRequest from scratch (as e.g. IPAPI does per lookup).
+ *
+ *     mvn -P benchmarks test -Djmh.args=HttpRequestTemplateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestTemplateBenchmark {
+
+    private static final String BASE_URL = "http://ip-api.com";
+
+    private static final HttpRequestTemplate TEMPLATE = HttpRequestTemplate.
+            builder(BASE_URL + "/json/{ip}?lang={lang}&fields={fields}").
+            userAgent(SampleUserAgents.MOZILLA_WIN_NT).
+            build();
+
+    private final String ip = "203.0.113.42";
+
+    private final String lang = "en";
+
+    private final String fields = "status,country,city,query";
+
+    @Benchmark
+    public String template() {
+        return TEMPLATE.bind(ip, lang, fields).getURL();
+    }
+
+    @Benchmark
+    public String simpleRequest() {
+        return new GetHttpRequest().
+                baseUrl(BASE_URL).
+                path("json/" + Formatting.urlEncodeUtf8(ip)). // as bind(...) does
+                encodedQueryParam("lang", lang).
+                encodedQueryParam("fields", fields).
+                userAgent(SampleUserAgents.MOZILLA_WIN_NT).
+                getURL();
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class HttpRequestTemplateTest {
+
+    private static HttpRequestTemplate template(String url) {
+        return HttpRequestTemplate.builder(url).userAgent("kantanj-test").build();
+    }
+
+    @Test
+    public void percentEncodesPathAndFormEncodesQuery() {
+        HttpRequestTemplate template = template("https://example.com/search/{q}?q={q}&page={page}");
+
+        assertEquals(Arrays.asList("q", "page"), template.getPlaceholders());
+        assertEquals("https://example.com/search/a%20b%2Bc%2Fd?q=a+b%2Bc%2Fd&page=2",
+                template.bind("a b+c/d", 2).getURL());
+    }
+
+    @Test
+    public void bindsByName() {
+        assertEquals("https://example.com/users/john%20doe",
+                template("https://example.com/users/{name}").
+                        bind(Collections.singletonMap("name", "john doe")).getURL());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingValues() {
+        template("https://example.com/{a}/{b}").bind("a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnclosedPlaceholders() {
+        template("https://example.com/{a");
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.networking;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class JdkHttpClientTransportTest {
+
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    private Server server;
+
+    private int port;
+
+    /**
+     * Remote addresses of TCP connections accepted by the server
+     * (an h2c upgrade replaces the Connection, but not the socket).
+     */
+    private final Set<SocketAddress> clientSockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Requests to /wait are only answered once CONCURRENT_REQUESTS of them are in progress at once.
+     */
+    private final CountDownLatch allWaiting = new CountDownLatch(CONCURRENT_REQUESTS);
+
+    @Before
+    public void startServer() throws Exception {
+        assumeTrue("HttpClient requires Java 11+", JdkHttpClientTransport.isAvailable());
+
+        server = new Server();
+        HttpConfiguration config = new HttpConfiguration();
+        ServerConnector connector = new ServerConnector(server,
+                new HttpConnectionFactory(config), new HTTP2CServerConnectionFactory(config));
+
+        connector.setHost("127.0.0.1");
+        connector.addBean(new Connection.Listener.Adapter() {
+            @Override
+            public void onOpened(Connection connection) {
+                clientSockets.add(connection.getEndPoint().getRemoteAddress());
+            }
+        });
+
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                if (target.equals("/wait")) {
+                    allWaiting.countDown();
+
+                    try {
+                        if (!(allWaiting.await(10, TimeUnit.SECONDS))) {
+                            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                            baseRequest.setHandled(true);
+                            return;
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(ex);
+                    }
+                }
+
+                response.setContentType("text/plain");
+                response.getOutputStream().write(request.getProtocol().getBytes(StandardCharsets.UTF_8));
+                baseRequest.setHandled(true);
+            }
+        });
+
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void multiplexesConcurrentRequestsOverOneConnection() throws Exception {
+        JdkHttpClientTransport transport = new JdkHttpClientTransport();
+
+        // The first request upgrades the connection to HTTP/2 (h2c). Jetty reports
+        // the protocol of the request it was upgraded by, so check the response version.
+        assertEquals(200, transport.execute(request("ping")).getStatusCode());
+        assertEquals(1, transport.getHttp2Responses());
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++)
+            futures.add(transport.executeAsync(request("wait"), Runnable::run));
+
+        // None of the requests is answered until all of them have reached the server,
+        // so they can only succeed if they are all in flight at once.
+        for (CompletableFuture<HttpResponse> future : futures) {
+            HttpResponse response = future.get(30, TimeUnit.SECONDS);
+
+            assertEquals(200, response.getStatusCode());
+            assertEquals("HTTP/2.0", response.getBodyAsString());
+        }
+
+        assertEquals(1, clientSockets.size());
+        assertEquals(CONCURRENT_REQUESTS + 1, transport.getHttp2Responses());
+        assertEquals(CONCURRENT_REQUESTS + 1, transport.getStats().getRequests());
+        assertEquals(0, transport.getStats().getFailedRequests());
+    }
+
+    @Test
+    public void usesHttp11WhenHttp2IsNotPreferred() throws Exception {
+        JdkHttpClientTransport transport = new JdkHttpClientTransport(false);
+        HttpResponse response = transport.execute(request("ping"));
+
+        assertEquals("HTTP/1.1", response.getBodyAsString());
+        assertEquals(0, transport.getHttp2Responses());
+    }
+
+    private HttpRequest request(String path) {
+        return new GetHttpRequest().
+                baseUrl("http://127.0.0.1:" + port).
+                path(path).
+                readTimeout(30_000).
+                userAgent("kantanj-test");
+    }
+
+}
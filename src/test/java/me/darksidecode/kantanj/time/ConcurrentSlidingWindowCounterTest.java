@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentSlidingWindowCounterTest {
+
+    @Test
+    public void countsEventsWithinWindow() {
+        ConcurrentSlidingWindowCounter counter = new ConcurrentSlidingWindowCounter(1, TimeUnit.MINUTES);
+
+        assertEquals(0, counter.count());
+        assertEquals(1, counter.incrementAndCount());
+        counter.increment();
+        assertEquals(2, counter.count());
+        assertEquals(60_000L, counter.getWindowMillis());
+    }
+
+    @Test
+    public void forgetsEventsAfterWindow() throws InterruptedException {
+        ConcurrentSlidingWindowCounter counter = new ConcurrentSlidingWindowCounter(100, TimeUnit.MILLISECONDS, 4);
+
+        for (int i = 0; i < 100; i++)
+            counter.increment();
+
+        Thread.sleep(200);
+
+        assertEquals(0, counter.count());
+        assertEquals(1, counter.incrementAndCount());
+    }
+
+    @Test
+    public void countsConcurrentIncrements() throws InterruptedException {
+        ConcurrentSlidingWindowCounter counter = new ConcurrentSlidingWindowCounter(1, TimeUnit.MINUTES);
+        int threads = 8, perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++)
+            new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    counter.increment();
+
+                done.countDown();
+            }).start();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, counter.count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyBuckets() {
+        new ConcurrentSlidingWindowCounter(5, TimeUnit.NANOSECONDS, 10);
+    }
+
+}
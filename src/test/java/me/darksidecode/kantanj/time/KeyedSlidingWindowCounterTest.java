@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KeyedSlidingWindowCounterTest {
+
+    @Test
+    public void countsKeysSeparately() {
+        KeyedSlidingWindowCounter<String> counter = new KeyedSlidingWindowCounter<>(1, TimeUnit.MINUTES);
+
+        assertEquals(1, counter.incrementAndCount("a"));
+        assertEquals(2, counter.incrementAndCount("a"));
+        assertEquals(1, counter.incrementAndCount("b"));
+
+        assertEquals(2, counter.count("a"));
+        assertEquals(1, counter.count("b"));
+        assertEquals(0, counter.count("c"));
+        assertEquals(2, counter.size());
+    }
+
+    @Test
+    public void removesKeys() {
+        KeyedSlidingWindowCounter<String> counter = new KeyedSlidingWindowCounter<>(1, TimeUnit.MINUTES);
+        counter.incrementAndCount("a");
+        counter.remove("a");
+
+        assertEquals(0, counter.count("a"));
+        assertEquals(0, counter.size());
+        assertEquals(1, counter.incrementAndCount("a"));
+    }
+
+    @Test
+    public void evictsIdleKeys() throws InterruptedException {
+        KeyedSlidingWindowCounter<String> counter = new KeyedSlidingWindowCounter<>(100, TimeUnit.MILLISECONDS, 4);
+        counter.incrementAndCount("idle");
+
+        Thread.sleep(200);
+
+        assertEquals(0, counter.count("idle"));
+        counter.incrementAndCount("active");
+        counter.evictIdle();
+
+        assertEquals(1, counter.size());
+        assertEquals(1, counter.count("active"));
+    }
+
+    @Test
+    public void evictsIdleKeysAutomatically() throws InterruptedException {
+        KeyedSlidingWindowCounter<String> counter = new KeyedSlidingWindowCounter<>(100, TimeUnit.MILLISECONDS, 4);
+        counter.incrementAndCount("idle");
+
+        Thread.sleep(250);
+        counter.incrementAndCount("active"); // sweeps, as a whole window has passed
+
+        assertEquals(1, counter.size());
+    }
+
+    @Test
+    public void countsConcurrentIncrementsExactly() throws InterruptedException {
+        KeyedSlidingWindowCounter<Integer> counter = new KeyedSlidingWindowCounter<>(1, TimeUnit.MINUTES);
+        int threads = 8, perThread = 10_000, keys = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++)
+            new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    counter.incrementAndCount(j % keys);
+
+                done.countDown();
+            }).start();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        for (int key = 0; key < keys; key++)
+            assertEquals(threads * perThread / keys, counter.count(key));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a counter shared by several threads: ConcurrentSlidingWindowCounter versus
+ * ExpiringList (which now delegates to SlidingWindowCounter, a lock around a queue of times).
+ *
+ * The window is short so that the (exact) queue does not grow to millions of events.
+ * Use -t to change the number of threads:
+ *
+ *     mvn -P benchmarks test -Djmh.args="SlidingWindowCounterBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class SlidingWindowCounterBenchmark {
+
+    private static final long WINDOW_MILLIS = 10;
+
+    private final ConcurrentSlidingWindowCounter concurrentCounter =
+            new ConcurrentSlidingWindowCounter(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final ExpiringList expiringList = new ExpiringList(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+    @Benchmark
+    public void concurrentIncrement() {
+        concurrentCounter.increment();
+    }
+
+    @Benchmark
+    public long concurrentIncrementAndCount() {
+        return concurrentCounter.incrementAndCount();
+    }
+
+    @Benchmark
+    public int expiringListUpdateAndCount() {
+        return expiringList.updateAndCount();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 German Vekhorev (DarksideCode)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package me.darksidecode.kantanj.time;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowCounterTest {
+
+    @Test
+    public void countsEventsWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1, TimeUnit.MINUTES);
+
+        assertEquals(0, counter.count());
+        assertEquals(1, counter.incrementAndCount());
+        assertEquals(2, counter.incrementAndCount());
+        assertEquals(2, counter.count());
+        assertEquals(60_000L, counter.getWindowMillis());
+    }
+
+    @Test
+    public void evictsExpiredEvents() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(100, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 1000; i++)
+            counter.incrementAndCount();
+
+        Thread.sleep(150);
+
+        assertEquals(0, counter.count());
+        assertEquals(1, counter.incrementAndCount());
+    }
+
+    @Test
+    public void shrinksAfterPeak() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(50, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 10_000; i++)
+            counter.incrementAndCount();
+
+        Thread.sleep(100);
+
+        // Each eviction halves the queue at most once, so it keeps shrinking while idle.
+        for (int i = 0; i < 20; i++)
+            assertEquals(0, counter.count());
+
+        assertEquals(0, counter.countWithoutEviction());
+        assertEquals(1, counter.incrementAndCount());
+    }
+
+    @Test
+    public void reportsNextExpiry() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1, TimeUnit.MINUTES);
+        assertEquals(0, counter.millisUntilNextExpiry());
+
+        counter.incrementAndCount();
+        long millis = counter.millisUntilNextExpiry();
+
+        assertTrue(String.valueOf(millis), (millis > 0) && (millis <= 60_000L));
+    }
+
+    @Test
+    public void countsConcurrentIncrementsExactly() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1, TimeUnit.MINUTES);
+        int threads = 8, perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++)
+            new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    counter.incrementAndCount();
+
+                done.countDown();
+            }).start();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, counter.count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveWindow() {
+        new SlidingWindowCounter(0, TimeUnit.SECONDS);
+    }
+
+}